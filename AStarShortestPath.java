@@ -0,0 +1,133 @@
+/**
+ * A* search for the shortest path between one source and one target of an
+ * IndexedGraph.  Vertices are taken from the queue in order of their
+ * distance from the source plus a heuristic estimate of their distance to
+ * the target, so a good heuristic steers the search towards the target
+ * and it settles far fewer vertices than Dijkstra's algorithm, which is
+ * the special case of a zero estimate.
+ *
+ * The estimate must never exceed the true distance.  If it is also
+ * consistent (estimate(v) is at most weight(v, w) + estimate(w) for every
+ * edge), as the landmark heuristic is, no vertex is taken from the queue
+ * twice; otherwise a vertex whose distance improves after it was settled
+ * is queued again.  An instance reuses its query context between queries
+ * and must not be shared between threads.
+ */
+public class AStarShortestPath {
+
+    /**
+     * Lower bound on the distance between two vertex ids.
+     */
+    public interface Heuristic {
+
+	/**
+	 * @param v
+	 * @param target
+	 * @return a lower bound on the length of the shortest path from v to
+	 *         target, or Float.POSITIVE_INFINITY if there is none
+	 */
+	float estimate(int v, int target);
+
+    }
+
+    /**
+     * The zero estimate, which makes the search Dijkstra's algorithm
+     * stopped at the target.
+     */
+    public static final Heuristic NONE = new Heuristic() {
+	    public float estimate(int v, int target) {
+		return 0.0f;
+	    }
+	};
+
+    private IndexedGraph g;
+    private Heuristic heuristic;
+    private QueryContext context;
+
+    /**
+     * Search g, which is frozen into a CompactDirectedGraph first if it is
+     * not already indexed.  The heuristic is given ids of getGraph().
+     * @param g
+     * @param heuristic
+     */
+    public AStarShortestPath(Graph g, Heuristic heuristic) {
+	this.g = CompactDirectedGraph.indexed(g);
+	this.heuristic = heuristic;
+	context = new QueryContext(this.g);
+    }
+
+    public IndexedGraph getGraph() {
+	return g;
+    }
+
+    public Heuristic getHeuristic() {
+	return heuristic;
+    }
+
+    public ShortestPath shortestPath(Vertex source, Vertex target) {
+	return shortestPath(g.indexOf(source), g.indexOf(target));
+    }
+
+    /**
+     * The shortest path between two vertex ids.
+     * @param source
+     * @param target
+     * @return
+     */
+    public ShortestPath shortestPath(int source, int target) {
+	float[] distance = context.distances();
+	int[] predecessor = context.predecessors();
+	IndexedPriorityQ q = context.heap();
+	GraphMetrics.Query metrics = GraphMetrics.ASTAR.start(q);
+	context.reset();
+	context.visit(source);
+	distance[source] = 0.0f;
+	predecessor[source] = -1;
+	q.offer(source, heuristic.estimate(source, target));
+
+	int settled = 0;
+	long scanned = 0;
+	long relaxations = 0;
+	ShortestPath path = null;
+	while (!q.isEmpty()) {
+	    int v = q.poll();
+	    settled++;
+	    if (v == target) {
+		path = new ShortestPath(g, pathTo(predecessor, target), distance[target], settled);
+		break;
+	    }
+	    float dv = distance[v];
+	    int start = g.edgeStart(v), end = g.edgeEnd(v);
+	    scanned += end - start;
+	    for (int e = start; e < end; e++) {
+		int w = g.target(e);
+		float dw = dv + g.weight(e);
+		if (context.visit(w) || dw < distance[w]) {
+		    relaxations++;
+		    float estimate = heuristic.estimate(w, target);
+		    distance[w] = dw;
+		    predecessor[w] = v;
+		    if (estimate != Float.POSITIVE_INFINITY) {
+			q.offerOrDecrease(w, dw + estimate);
+		    }
+		}
+	    }
+	}
+	if (path == null) {
+	    path = new ShortestPath(g, new int[0], Float.POSITIVE_INFINITY, settled);
+	}
+	if (metrics != null) {
+	    metrics.stop(settled, scanned, relaxations);
+	}
+	return path;
+    }
+
+    private static int[] pathTo(int[] predecessor, int target) {
+	int length = 0;
+	for (int v = target; v >= 0; v = predecessor[v]) length++;
+	int[] path = new int[length];
+	for (int v = target; v >= 0; v = predecessor[v]) path[--length] = v;
+	return path;
+    }
+
+}
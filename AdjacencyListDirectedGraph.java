@@ -1,14 +1,19 @@
+import java.lang.ref.SoftReference;
 import java.util.*;
 
 public class AdjacencyListDirectedGraph implements Graph {
 
-    private TreeMap<Vertex, TreeMap<String, Edge>> adjacencyList;
+    private TreeMap<Vertex, HashMap<String, EdgeBucket>> adjacencyList;
     private HashMap<String, Vertex> vertexList;
+    private HashMap<String, ArrayList<Edge>> incomingEdges;
     private int edgeCount;
+    private int modCount;
+    private volatile SoftReference<Frozen> frozen;
 
     public AdjacencyListDirectedGraph() {
-	adjacencyList = new TreeMap<Vertex, TreeMap<String, Edge>>();
+	adjacencyList = new TreeMap<Vertex, HashMap<String, EdgeBucket>>();
 	vertexList = new HashMap<String, Vertex>();
+	incomingEdges = new HashMap<String, ArrayList<Edge>>();
 	edgeCount = 0;
     }
 
@@ -31,41 +36,116 @@ public class AdjacencyListDirectedGraph implements Graph {
     }
 
     public void addEdge(String v, String w, float weight) {
-	if (!vertexList.containsKey(v)) {
-	    vertexList.put(v, new AdjacencyListVertex(v));
-	}
-	if (!vertexList.containsKey(w)) {
-	    vertexList.put(w, new AdjacencyListVertex(w));
-	}
-	Vertex vv = vertexList.get(v);
-	Vertex vw = vertexList.get(w);
-
-	if (!adjacencyList.containsKey(vv)) {
-	    adjacencyList.put(vv, new TreeMap<String, Edge>());
-	}
-	if (!adjacencyList.containsKey(vw)) {
-	    adjacencyList.put(vw, new TreeMap<String, Edge>());
-	}
-	Set<String> keys = adjacencyList.get(vv).keySet();
-	int sameEdgeCount = 0;
-	for (Iterator<String> i = keys.iterator(); i.hasNext();) {
-	    sameEdgeCount = Math.max(Integer.parseInt(i.next().split(" ")[1]), sameEdgeCount);
+	Vertex vv = vertex(v);
+	Vertex vw = vertex(w);
+	HashMap<String, EdgeBucket> adjs = adjacencyList.get(vv);
+	EdgeBucket bucket = adjs.get(w);
+	if (bucket == null) {
+	    bucket = new EdgeBucket();
+	    adjs.put(w, bucket);
 	}
 	
-	adjacencyList.get(vv).put(w+" "+sameEdgeCount, new Edge(Integer.toString(++edgeCount), weight, vv, vw));
+	Edge e = new Edge(Integer.toString(++edgeCount), weight, vv, vw);
+	bucket.add(e);
+	incomingEdges.get(w).add(e);
+	modCount++;
+	if (frozen != null) frozen = null;
 
     }
 
     public void addEdge(Vertex v, Vertex w, float weight) {
 	if (!vertexList.containsKey(v.getLabel())) {
-	    vertexList.put(v.getLabel(), v);
+	    register(v, 0, 0);
 	}
 	if (!vertexList.containsKey(w.getLabel())) {
-	    vertexList.put(w.getLabel(), w);
+	    register(w, 0, 0);
 	}
 	addEdge(v.getLabel(), w.getLabel(), weight);
     }
 
+    /**
+     * Add a batch of edges in the order they are given, as collected by
+     * GraphBuilder, so edge names and the order of incoming edges are the
+     * ones calling addEdge for each in turn would give.  Each vertex is
+     * looked up once for the whole batch and sized for its edges up front,
+     * and a source-destination pair is looked up only when it differs from
+     * the previous edge's.
+     * @param labels the vertex labels, indexed by the ids used in sources
+     *        and destinations
+     * @param vertexCount the number of labels used
+     * @param sources
+     * @param destinations
+     * @param weights
+     * @param count the number of edges
+     */
+    void addEdges(String[] labels, int vertexCount, int[] sources, int[] destinations, float[] weights,
+		  int count) {
+	int[] outDegree = new int[vertexCount];
+	int[] inDegree = new int[vertexCount];
+	for (int e = 0; e < count; e++) {
+	    outDegree[sources[e]]++;
+	    inDegree[destinations[e]]++;
+	}
+	Vertex[] vertices = new Vertex[vertexCount];
+	ArrayList<HashMap<String, EdgeBucket>> rows = new ArrayList<HashMap<String, EdgeBucket>>(vertexCount);
+	ArrayList<ArrayList<Edge>> incoming = new ArrayList<ArrayList<Edge>>(vertexCount);
+	for (int i = 0; i < vertexCount; i++) {
+	    if (outDegree[i] > 0 || inDegree[i] > 0) {
+		vertices[i] = vertexList.get(labels[i]);
+		if (vertices[i] == null) {
+		    vertices[i] = register(new AdjacencyListVertex(labels[i]), outDegree[i], inDegree[i]);
+		}
+		else {
+		    incomingEdges.get(labels[i]).ensureCapacity(incomingEdges.get(labels[i]).size() + inDegree[i]);
+		}
+	    }
+	    rows.add(outDegree[i] == 0 ? null : adjacencyList.get(vertices[i]));
+	    incoming.add(vertices[i] == null ? null : incomingEdges.get(labels[i]));
+	}
+
+	EdgeBucket bucket = null;
+	for (int e = 0; e < count; e++) {
+	    int v = sources[e];
+	    int w = destinations[e];
+	    if (e == 0 || v != sources[e-1] || w != destinations[e-1]) {
+		HashMap<String, EdgeBucket> adjs = rows.get(v);
+		bucket = adjs.get(labels[w]);
+		if (bucket == null) {
+		    bucket = new EdgeBucket();
+		    adjs.put(labels[w], bucket);
+		}
+	    }
+	    Edge edge = new Edge(Integer.toString(++edgeCount), weights[e], vertices[v], vertices[w]);
+	    bucket.add(edge);
+	    incoming.get(w).add(edge);
+	    modCount++;
+	}
+	if (frozen != null) frozen = null;
+    }
+
+    /**
+     * The vertex labelled v, added to the graph if it is new.
+     */
+    private Vertex vertex(String v) {
+	Vertex vertex = vertexList.get(v);
+	if (vertex == null) {
+	    vertex = register(new AdjacencyListVertex(v), 0, 0);
+	}
+	return vertex;
+    }
+
+    /**
+     * Add a vertex with room for the given numbers of distinct neighbours
+     * and incoming edges.
+     */
+    private Vertex register(Vertex v, int neighbours, int incoming) {
+	vertexList.put(v.getLabel(), v);
+	adjacencyList.put(v, (neighbours == 0 ? new HashMap<String, EdgeBucket>()
+			      : new HashMap<String, EdgeBucket>(neighbours * 4 / 3 + 1)));
+	incomingEdges.put(v.getLabel(), (incoming == 0 ? new ArrayList<Edge>() : new ArrayList<Edge>(incoming)));
+	return v;
+    }
+
     /**
      * Neigbours of vertex v.  Convenience method for using a string label.
      * @param v the vertex to find the neighbours of.
@@ -81,9 +161,9 @@ public class AdjacencyListDirectedGraph implements Graph {
      * @return
      */
     public Iterable<Vertex> adjacentTo(Vertex v) {
-	Iterable<Edge> incidentEdges = adjacencyList.get(v).values();
+	Iterable<EdgeBucket> buckets = adjacencyList.get(v).values();
 	TreeSet<Vertex> adjs = new TreeSet<Vertex>();
-	for (Iterator<Edge> i = incidentEdges.iterator(); i.hasNext();) {
+	for (Iterator<EdgeBucket> i = buckets.iterator(); i.hasNext();) {
 	    adjs.add(i.next().getDestination());
 	}
 	return adjs;
@@ -132,24 +212,52 @@ public class AdjacencyListDirectedGraph implements Graph {
      * @return
      */
     public boolean hasEdge(Vertex v, Vertex w) {
-	return adjacencyList.get(v).containsKey(w.getLabel()+" 0");
+	return adjacencyList.get(v).containsKey(w.getLabel());
     }
 
     public Iterable<Edge> getEdges(String v, String w) {
 	return getEdges(vertexList.get(v), vertexList.get(w));
     }
 
+    /**
+     * All edges from v to w, in the order they were added.
+     * @param v
+     * @param w
+     * @return
+     */
     public Iterable<Edge> getEdges(Vertex v, Vertex w) {
-	LinkedList<Edge> matchingEdges = new LinkedList<Edge>();
-	for (int i = 0;;i++) {
-	    Edge e = adjacencyList.get(v).get(w.getLabel()+" "+i);
-	    if (e==null) break;
-	    matchingEdges.add(e);
+	EdgeBucket bucket = adjacencyList.get(v).get(w.getLabel());
+	if (bucket == null) {
+	    return Collections.<Edge>emptyList();
+	}
+	return bucket;
+    }
+
+    /**
+     * Edges leaving v, a destination at a time in no particular order and
+     * parallel edges in the order they were added.
+     * @param v
+     * @param visitor
+     */
+    public void forEachEdge(Vertex v, EdgeVisitor visitor) {
+	for (EdgeBucket bucket : adjacencyList.get(v).values()) {
+	    Vertex w = bucket.getDestination();
+	    for (int i = 0; i < bucket.size(); i++) {
+		visitor.visit(w, bucket.get(i).getWeight());
+	    }
 	}
-	return matchingEdges;
     }
 
+    /**
+     * The lightest of the given edges.  Constant time when edges came from
+     * AdjacencyListDirectedGraph.getEdges.
+     * @param edges
+     * @return
+     */
     public static Edge getSmallestEdge(Iterable<Edge> edges) {
+	if (edges instanceof EdgeBucket) {
+	    return ((EdgeBucket)edges).getSmallestEdge();
+	}
 	Edge smallestEdge = new Edge(null, Float.MAX_VALUE, null, null);
 	for (Iterator<Edge> i = edges.iterator(); i.hasNext();) {
 	    Edge e = i.next();
@@ -188,46 +296,37 @@ public class AdjacencyListDirectedGraph implements Graph {
     }
 
     public static TreeMap<Vertex, String> getShortestPathsPriorityQueue(Graph g, Vertex s) {
-	Iterable<Vertex> allVerts = g.getVertices();
+	Collection<Vertex> allVerts = (Collection<Vertex>)(g.getVertices());
 	HashMap<Vertex, Float> distance = new HashMap<Vertex, Float>();
 	HashMap<Vertex, Vertex> predecessor = new HashMap<Vertex, Vertex>();
-	PriorityQ<Vertex> q = new PriorityQ<Vertex>(((Collection)allVerts).size(),
-							    new Comparator<Vertex>() {
-							       public int compare(Vertex a, Vertex b) {
-								   return (int)(distance.get(a) - distance.get(b));
-							       }
-							    });	
-
-	for (Iterator<Vertex> i = allVerts.iterator(); i.hasNext();) {
-	    Vertex v = i.next();
-	    v.setToUndiscovered();
+	HashSet<Vertex> settled = new HashSet<Vertex>();
+	Vertex[] handles = allVerts.toArray(new Vertex[allVerts.size()]);
+	HashMap<Vertex, Integer> handleOf = new HashMap<Vertex, Integer>();
+	IndexedPriorityQ q = new IndexedPriorityQ(handles.length);
+	Relaxation relax = new Relaxation(distance, predecessor, settled, q, handleOf);
+	GraphMetrics.Query metrics = GraphMetrics.LEGACY_PRIORITY_QUEUE.start(q);
+
+	for (int i = 0; i < handles.length; i++) {
+	    Vertex v = handles[i];
 	    distance.put(v, ((v).compareTo(s)==0?0.0f:Float.MAX_VALUE));
 	    predecessor.put(v, null);
-	    q.offer(v);
+	    handleOf.put(v, i);
+	    q.offer(i, distance.get(v));
 	}
 
 	while (q.size() > 0) {
-       	    Vertex v = q.poll();
-	    if (v.isUndiscovered()) {
-		if (distance.get(v) == Float.MAX_VALUE) { return null; }
-		v.setToDiscovered();
-		Iterable<Vertex> adjVerts = g.adjacentTo(v);
-		for (Iterator<Vertex> i = adjVerts.iterator(); i.hasNext();) {
-		    Vertex w = i.next();
-		    if (w.isUndiscovered()) {
-			Edge e = AdjacencyListDirectedGraph.getSmallestEdge(g.getEdges(v, w));
-			if (distance.get(v) + e.getWeight() < distance.get(w)) {
-			    distance.remove(w);
-			    distance.put(w, distance.get(v) + e.getWeight());
-			    predecessor.remove(w);
-			    predecessor.put(w, v);
-			    q.remove(w);
-			    q.offer(w);
-			}
-		    }
+       	    Vertex v = handles[q.poll()];
+	    if (!settled.contains(v)) {
+		if (distance.get(v) == Float.MAX_VALUE) {
+		    relax.stop(metrics);
+		    return null;
 		}
+		settled.add(v);
+		relax.from(v);
+		g.forEachEdge(v, relax);
 	    }
 	}
+	relax.stop(metrics);
 
 	TreeMap<Vertex, String> resultMap = new TreeMap<Vertex, String>();
 	for (Iterator<Vertex> i = allVerts.iterator(); i.hasNext();) {
@@ -242,6 +341,7 @@ public class AdjacencyListDirectedGraph implements Graph {
 	Collection<Vertex> allVerts = (Collection<Vertex>)(g.getVertices());
 	HashMap<Vertex, Float> distance = new HashMap<Vertex, Float>();
 	HashMap<Vertex, Vertex> predecessor = new HashMap<Vertex, Vertex>();
+	HashSet<Vertex> settled = new HashSet<Vertex>();
 	List<Vertex> l = new LinkedList<Vertex>(allVerts);
 	Comparator<Vertex> c = new Comparator<Vertex>() {
 	    public int compare(Vertex a, Vertex b) {
@@ -250,33 +350,27 @@ public class AdjacencyListDirectedGraph implements Graph {
 	};
 
 	for (Vertex v : allVerts) {
-	    v.setToUndiscovered();
 	    distance.put(v, (((AdjacencyListVertex)v).compareTo(s)==0?0.0f:Float.MAX_VALUE));
 	    predecessor.put(v, null);
 	}
+	Relaxation relax = new Relaxation(distance, predecessor, settled, null, null);
+	GraphMetrics.Query metrics = GraphMetrics.LEGACY_LIST.start();
 
 	while (l.size() > 0) {
 	    Collections.sort(l, c);
 	    Vertex v = l.get(0);
 	    l.remove(0);
-	    if (v.isUndiscovered()) {
-		if (distance.get(v) == Float.MAX_VALUE) { return null; }
-		v.setToDiscovered();
-		Iterable<Vertex> adjVerts = g.adjacentTo(v);
-		for (Iterator<Vertex> i = adjVerts.iterator(); i.hasNext();) {
-		    Vertex w = i.next();
-		    if (w.isUndiscovered()) {
-			Edge e = AdjacencyListDirectedGraph.getSmallestEdge(g.getEdges(v, w));
-			if (distance.get(v) + e.getWeight() < distance.get(w)) {
-			    distance.remove(w);
-			    distance.put(w, distance.get(v) + e.getWeight());
-			    predecessor.remove(w);
-			    predecessor.put(w, v);
-			}
-		    }
+	    if (!settled.contains(v)) {
+		if (distance.get(v) == Float.MAX_VALUE) {
+		    relax.stop(metrics);
+		    return null;
 		}
+		settled.add(v);
+		relax.from(v);
+		g.forEachEdge(v, relax);
 	    }
 	}
+	relax.stop(metrics);
 
 	TreeMap<Vertex, String> resultMap = new TreeMap<Vertex, String>();
 	for (Iterator<Vertex> i = allVerts.iterator(); i.hasNext();) {
@@ -287,16 +381,162 @@ public class AdjacencyListDirectedGraph implements Graph {
 	return resultMap;
     }
 
-    public int getInDegree(String v) {
-	int inDegree = 0;
-	Iterable<TreeMap<String, Edge>> adjMaps = adjacencyList.values();
-	for (Iterator<TreeMap<String, Edge>> i = adjMaps.iterator(); i.hasNext();) {
-	    Iterable<String> adjLabels = i.next().keySet();
-	    for (Iterator<String> j = adjLabels.iterator(); j.hasNext();) {
-		if (j.next().split(" ")[0].equals(v)) inDegree++;
+    /**
+     * Relaxes the edges of each settled vertex in turn for the two searches
+     * above, one visitor serving the whole search and counting the edges it
+     * is shown and the distances it improves for GraphMetrics.
+     */
+    private static class Relaxation implements EdgeVisitor {
+
+	private HashMap<Vertex, Float> distance;
+	private HashMap<Vertex, Vertex> predecessor;
+	private HashSet<Vertex> settled;
+	private IndexedPriorityQ q;
+	private HashMap<Vertex, Integer> handleOf;
+	private Vertex v;
+	private float dv;
+	private long edgesScanned;
+	private long relaxations;
+
+	/**
+	 * @param q the queue to lower the keys of improved vertices in, or
+	 *        null if there is none
+	 * @param handleOf the queue handle of each vertex
+	 */
+	Relaxation(HashMap<Vertex, Float> distance, HashMap<Vertex, Vertex> predecessor, HashSet<Vertex> settled,
+		   IndexedPriorityQ q, HashMap<Vertex, Integer> handleOf) {
+	    this.distance = distance;
+	    this.predecessor = predecessor;
+	    this.settled = settled;
+	    this.q = q;
+	    this.handleOf = handleOf;
+	}
+
+	void from(Vertex v) {
+	    this.v = v;
+	    dv = distance.get(v);
+	}
+
+	public void visit(Vertex w, float weight) {
+	    edgesScanned++;
+	    if (settled.contains(w) || !(dv + weight < distance.get(w))) return;
+	    relaxations++;
+	    distance.put(w, dv + weight);
+	    predecessor.put(w, v);
+	    if (q != null) {
+		q.decreaseKey(handleOf.get(w), dv + weight);
 	    }
 	}
-	return inDegree;
+
+	/**
+	 * Stop metrics, if they are on, with this search's counts.  The heap
+	 * search's initial offers are not relaxations, so these are counted
+	 * here rather than from the heap.
+	 */
+	void stop(GraphMetrics.Query metrics) {
+	    if (metrics != null) {
+		metrics.stop(settled.size(), edgesScanned, relaxations);
+	    }
+	}
+    }
+
+    /**
+     * Number of changes made to the graph so far.  Anything computed from
+     * the graph is stale once this has moved on.
+     * @return
+     */
+    public int getModificationCount() {
+	return modCount;
+    }
+
+    /**
+     * Take a read-only compressed sparse row snapshot of this graph.  Later
+     * calls to addEdge are not reflected in the snapshot.  The snapshot is
+     * handed out again until the graph next changes, so searches that take
+     * a Graph only pay for freezing it once per change, but it is only
+     * softly held: the garbage collector may drop it when memory is short,
+     * and adding an edge drops it at once.  Callers that query a graph
+     * that keeps changing should keep the frozen view themselves.
+     * @return
+     */
+    public CompactDirectedGraph freeze() {
+	SoftReference<Frozen> ref = frozen;
+	Frozen f = (ref == null ? null : ref.get());
+	int version = modCount;
+	if (f == null || f.version != version) {
+	    f = new Frozen(new CompactDirectedGraph(this), version);
+	    frozen = new SoftReference<Frozen>(f);
+	}
+	return f.graph;
+    }
+
+    /**
+     * The last snapshot taken and the modification count it was taken at.
+     */
+    private static class Frozen {
+
+	private final CompactDirectedGraph graph;
+	private final int version;
+
+	Frozen(CompactDirectedGraph graph, int version) {
+	    this.graph = graph;
+	    this.version = version;
+	}
+    }
+
+    /**
+     * All edges leaving vertex v.
+     * @param v
+     * @return
+     */
+    public Iterable<Edge> getOutgoingEdges(Vertex v) {
+	ArrayList<Edge> outgoing = new ArrayList<Edge>();
+	for (EdgeBucket bucket : adjacencyList.get(v).values()) {
+	    for (Edge e : bucket) {
+		outgoing.add(e);
+	    }
+	}
+	return outgoing;
+    }
+
+    /**
+     * All edges arriving at vertex v, in the order they were added.
+     * @param v
+     * @return
+     */
+    public Iterable<Edge> getIncomingEdges(String v) {
+	return Collections.unmodifiableList(incomingEdges.get(v));
+    }
+
+    public Iterable<Edge> getIncomingEdges(Vertex v) {
+	return getIncomingEdges(v.getLabel());
+    }
+
+    /**
+     * Vertices with an edge to vertex v.
+     * @param v the vertex to find the in-neighbours of.
+     * @return
+     */
+    public Iterable<Vertex> incomingTo(String v) {
+	TreeSet<Vertex> adjs = new TreeSet<Vertex>();
+	for (Edge e : incomingEdges.get(v)) {
+	    adjs.add(e.getSource());
+	}
+	return adjs;
+    }
+
+    public Iterable<Vertex> incomingTo(Vertex v) {
+	return incomingTo(v.getLabel());
+    }
+
+    /**
+     * Number of edges arriving at vertex v, counting parallel edges.
+     * @param v
+     * @return
+     */
+    public int getInDegree(String v) {
+	ArrayList<Edge> incoming = incomingEdges.get(v);
+	return (incoming == null ? 0 : incoming.size());
     }
 
     public int getInDegree(Vertex v) {
@@ -2,88 +2,120 @@
  * To change this template, choose Tools | Templates
  * and open the template in the editor.
  */
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
 import java.util.Stack;
 
 /**
+ * Breadth first search from one source.  Visited marks and the queue are
+ * kept in a QueryContext rather than in the vertices, so searches on the
+ * same graph can run concurrently from different threads.
  *
  * @author lewi0146
  */
 public class BreadthFirstSearch {
 
-    Map<Vertex,Vertex> prev;
-    Map<Vertex,Integer> dist;
-    List<Vertex> l;
+    IndexedGraph g;
+    int[] prev;
+    int[] dist;
+    int[] order;
     
     public BreadthFirstSearch(Graph g, Vertex source) {
-        prev = new HashMap<>();
-        dist = new HashMap<>();
-        l = new LinkedList<>();
-        Iterable<Vertex> vs = g.getVertices();
-        for (Vertex v : vs) {
-            if (v.equals(source)) {
-                source = v;
-            }
-            v.setToUndiscovered();
-            
+        this(CompactDirectedGraph.indexed(g), source, null);
+    }
+
+    /**
+     * Search g from source using the scratch space of context.
+     * @param g
+     * @param source
+     * @param context scratch space for g, or null to allocate one
+     */
+    public BreadthFirstSearch(IndexedGraph g, Vertex source, QueryContext context) {
+        this.g = g;
+        if (context == null) {
+            context = new QueryContext(g);
         }
-	
-        bfs(source, g);
+        prev = new int[g.vertexCount()];
+        dist = new int[g.vertexCount()];
+        Arrays.fill(prev, -1);
+        Arrays.fill(dist, -1);
+
+        bfs(g.indexOf(source), context);
         
     }
+
+    /**
+     * Wrap the results of a search made elsewhere, such as by
+     * ParallelBreadthFirstSearch.
+     */
+    BreadthFirstSearch(IndexedGraph g, int[] prev, int[] dist, int[] order) {
+        this.g = g;
+        this.prev = prev;
+        this.dist = dist;
+        this.order = order;
+    }
     
-    private void bfs(Vertex v, Graph g) {
+    private void bfs(int v, QueryContext context) {
 	
-        Queue<Vertex> q = new LinkedList<>();
+        GraphMetrics.Query metrics = GraphMetrics.BFS.start();
+        int[] q = context.queue();
+        int head = 0;
+        int tail = 0;
+        long scanned = 0;
+        context.reset();
         
-        q.offer(v);
-        dist.put(v, 0);
+        q[tail++] = v;
+        context.visit(v);
+        dist[v] = 0;
         
-        while (!q.isEmpty()) {
+        while (head < tail) {
 
-            Vertex v2 = q.poll();
-            v2.setToDiscovered();
-            Iterable<Vertex> vs = g.adjacentTo(v2);
-            if (vs != null) {
-                for (Vertex child : vs) {
+            int v2 = q[head++];
+            int start = g.edgeStart(v2), end = g.edgeEnd(v2);
+            scanned += end - start;
+            for (int e = start; e < end; e++) {
+                int child = g.target(e);
 		    
-                    if (child.isUndiscovered()) {
-                        child.setToDiscovered();
-                        q.offer(child);
-                        dist.put(child, 1 + dist.get(v2));
-                        prev.put(child, v2);
-                    }
+                if (context.visit(child)) {
+                    q[tail++] = child;
+                    dist[child] = 1 + dist[v2];
+                    prev[child] = v2;
                 }
             }
-            v2.setToFinished();
-            l.add(v2);
 
         }
+        order = Arrays.copyOf(q, tail);
+        if (metrics != null) {
+            metrics.stop(tail, scanned, tail - 1);
+        }
 
     }
      
     public List<Vertex> getBreadthFirstTraversalList() {
-	return l;
+	return new AbstractList<Vertex>() {
+	    public Vertex get(int i) {
+		return g.vertexAt(order[i]);
+	    }
+
+	    public int size() {
+		return order.length;
+	    }
+	};
     }
     
     public int getDistanceTo(Vertex to) {
-	if (dist.get(to) != null) {
-	    return dist.get(to);
-	}
-	else {
-	    return -1;
-	}
+	int v = g.indexOf(to);
+	return (v < 0 ? -1 : dist[v]);
     }
     
     public Iterable<Vertex> pathTo(Vertex to) {
 	Stack<Vertex> path = new Stack<Vertex>();
-	while (dist.containsKey(to)) {
-	    path.push(to);
-	    to = prev.get(to);
+	int v = g.indexOf(to);
+	if (v < 0 || dist[v] < 0) return path;
+	while (v >= 0) {
+	    path.push(g.vertexAt(v));
+	    v = prev[v];
 	}
 	return path;
     }
@@ -0,0 +1,509 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+
+/**
+ * Read-only compressed sparse row (CSR) form of a directed graph.  Vertices
+ * are given dense int ids in the order the source graph lists them and the
+ * outgoing edges of vertex i are stored at positions offsets[i] up to
+ * offsets[i+1] of the targets, weights and edges arrays, grouped by target id
+ * so parallel edges sit next to each other.  Labels are held in a
+ * LabelDictionary, which also maps them to ids, and graphs built without a
+ * source graph make their vertex objects the first time they are asked for.
+ */
+public class CompactDirectedGraph implements IndexedGraph {
+
+    private static final VarHandle VERTICES = MethodHandles.arrayElementVarHandle(Vertex[].class);
+
+    private LabelDictionary labels;
+    private Vertex[] vertices;
+    private int[] offsets;
+    private int[] targets;
+    private float[] weights;
+    private Edge[] edges;
+
+    /**
+     * Build a compact copy of g.  The vertex objects of g are shared, the
+     * adjacency structure is not, so later changes to g are not seen here.
+     * @param g the graph to copy
+     */
+    public CompactDirectedGraph(Graph g) {
+	ArrayList<Vertex> verts = new ArrayList<Vertex>();
+	for (Vertex v : g.getVertices()) {
+	    verts.add(v);
+	}
+	vertices = verts.toArray(new Vertex[verts.size()]);
+	labels = new LabelDictionary(vertices.length, vertices.length * 8);
+	for (int i = 0; i < vertices.length; i++) {
+	    labels.intern(vertices[i].getLabel());
+	}
+
+	offsets = new int[vertices.length + 1];
+	targets = new int[Math.max(vertices.length, 1)];
+	weights = new float[targets.length];
+	edges = new Edge[targets.length];
+	int edgeNo = 0;
+	for (int i = 0; i < vertices.length; i++) {
+	    offsets[i] = edgeNo;
+	    for (Edge e : outgoing(g, vertices[i])) {
+		if (edgeNo == targets.length) {
+		    grow(edgeNo * 2);
+		}
+		targets[edgeNo] = labels.indexOf(e.getDestination().getLabel());
+		weights[edgeNo] = e.getWeight();
+		edges[edgeNo] = e;
+		edgeNo++;
+	    }
+	    sortRow(offsets[i], edgeNo);
+	}
+	offsets[vertices.length] = edgeNo;
+	grow(edgeNo);
+    }
+
+    /**
+     * A graph over the given arrays, which are used as they are.  Vertex
+     * ids are the ids of labels, and labels interned beyond the length of
+     * vertices are not part of the graph.  Null entries of vertices are
+     * filled in when they are asked for, and edges may be null to make Edge
+     * objects only when they are asked for.
+     */
+    CompactDirectedGraph(LabelDictionary labels, Vertex[] vertices,
+			 int[] offsets, int[] targets, float[] weights, Edge[] edges) {
+	this.labels = labels;
+	this.vertices = vertices;
+	this.offsets = offsets;
+	this.targets = targets;
+	this.weights = weights;
+	this.edges = edges;
+    }
+
+    /**
+     * The graph with every edge of g reversed, so the outgoing edges of a
+     * vertex in the result are its incoming edges in g.  Vertex ids and
+     * vertex objects are the same as in g.  Edge objects are not copied;
+     * edges of the result are made on request and labelled with their
+     * position.
+     * @param g
+     * @return
+     */
+    public static CompactDirectedGraph transpose(IndexedGraph g) {
+	int n = g.vertexCount();
+	int m = g.edgeCount();
+	int[] offsets = new int[n+1];
+	for (int e = 0; e < m; e++) {
+	    offsets[g.target(e)+1]++;
+	}
+	for (int v = 0; v < n; v++) {
+	    offsets[v+1] += offsets[v];
+	}
+	int[] next = Arrays.copyOf(offsets, n);
+	int[] targets = new int[m];
+	float[] weights = new float[m];
+	for (int v = 0; v < n; v++) {
+	    for (int e = g.edgeStart(v), end = g.edgeEnd(v); e < end; e++) {
+		int position = next[g.target(e)]++;
+		targets[position] = v;
+		weights[position] = g.weight(e);
+	    }
+	}
+
+	if (g instanceof CompactDirectedGraph) {
+	    CompactDirectedGraph cg = (CompactDirectedGraph)g;
+	    return new CompactDirectedGraph(cg.labels, cg.vertices, offsets, targets, weights, null);
+	}
+	Vertex[] vertices = new Vertex[n];
+	LabelDictionary labels = new LabelDictionary(n, n * 8);
+	for (int i = 0; i < n; i++) {
+	    vertices[i] = g.vertexAt(i);
+	    labels.intern(vertices[i].getLabel());
+	}
+	return new CompactDirectedGraph(labels, vertices, offsets, targets, weights, null);
+    }
+
+    /**
+     * g itself if it is already an IndexedGraph, otherwise a compact copy.
+     * The copies that AdjacencyListDirectedGraph and the snapshots of
+     * ConcurrentDirectedGraph keep are reused while the graph is
+     * unchanged, so repeated queries on them only index the graph once.
+     * @param g
+     * @return
+     */
+    public static IndexedGraph indexed(Graph g) {
+	if (g instanceof IndexedGraph) {
+	    return (IndexedGraph)g;
+	}
+	if (g instanceof AdjacencyListDirectedGraph) {
+	    return ((AdjacencyListDirectedGraph)g).freeze();
+	}
+	if (g instanceof ConcurrentDirectedGraph) {
+	    return ((ConcurrentDirectedGraph)g).snapshot().toCompact();
+	}
+	if (g instanceof ConcurrentDirectedGraph.Snapshot) {
+	    return ((ConcurrentDirectedGraph.Snapshot)g).toCompact();
+	}
+	return new CompactDirectedGraph(g);
+    }
+
+    /**
+     * The edges leaving v, parallel edges in the order they were added.
+     * An AdjacencyListDirectedGraph hands them over straight from its
+     * buckets instead of a neighbour at a time.
+     */
+    private static Iterable<Edge> outgoing(Graph g, Vertex v) {
+	if (g instanceof AdjacencyListDirectedGraph) {
+	    return ((AdjacencyListDirectedGraph)g).getOutgoingEdges(v);
+	}
+	ArrayList<Edge> outgoing = new ArrayList<Edge>();
+	for (Vertex w : g.adjacentTo(v)) {
+	    for (Edge e : g.getEdges(v, w)) {
+		outgoing.add(e);
+	    }
+	}
+	return outgoing;
+    }
+
+    private void grow(int length) {
+	targets = Arrays.copyOf(targets, length);
+	weights = Arrays.copyOf(weights, length);
+	edges = Arrays.copyOf(edges, length);
+    }
+
+    /**
+     * Stable sort of one row by target id, by sorting target and position
+     * packed into longs.  Rows that are already in order are left alone.
+     */
+    private void sortRow(int from, int to) {
+	int i = from + 1;
+	while (i < to && targets[i-1] <= targets[i]) i++;
+	if (i >= to) return;
+	long[] keys = new long[to - from];
+	for (i = from; i < to; i++) {
+	    keys[i-from] = ((long)targets[i] << 32) | (i - from);
+	}
+	Arrays.sort(keys);
+	float[] rowWeights = Arrays.copyOfRange(weights, from, to);
+	Edge[] rowEdges = Arrays.copyOfRange(edges, from, to);
+	for (i = from; i < to; i++) {
+	    int j = (int)keys[i-from];
+	    targets[i] = (int)(keys[i-from] >>> 32);
+	    weights[i] = rowWeights[j];
+	    edges[i] = rowEdges[j];
+	}
+    }
+
+    /**
+     * First position in row v whose target is not less than w.
+     */
+    private int lowerBound(int v, int w) {
+	int lo = offsets[v];
+	int hi = offsets[v+1];
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (targets[mid] < w) lo = mid + 1;
+	    else hi = mid;
+	}
+	return lo;
+    }
+
+    /**
+     * Number of vertices in the graph.
+     * @return
+     */
+    public int vertexCount() {
+	return vertices.length;
+    }
+
+    /**
+     * Number of edges in the graph, counting parallel edges separately.
+     * @return
+     */
+    public int edgeCount() {
+	return offsets[vertices.length];
+    }
+
+    /**
+     * Dense id of the vertex with label v.
+     * @param v
+     * @return the id, or -1 if v is not in the graph
+     */
+    public int indexOf(String v) {
+	int id = labels.indexOf(v);
+	return (id < vertices.length ? id : -1);
+    }
+
+    /**
+     * Dense id of vertex v.
+     * @param v
+     * @return the id, or -1 if v is not in the graph
+     */
+    public int indexOf(Vertex v) {
+	return indexOf(v.getLabel());
+    }
+
+    /**
+     * The vertex with dense id i.  Threads racing to make the same vertex
+     * all get the one that was stored first.
+     * @param i
+     * @return
+     */
+    public Vertex vertexAt(int i) {
+	Vertex v = (Vertex)VERTICES.getAcquire(vertices, i);
+	if (v == null) {
+	    Vertex made = new AdjacencyListVertex(labels.label(i));
+	    v = (Vertex)VERTICES.compareAndExchangeRelease(vertices, i, null, made);
+	    if (v == null) v = made;
+	}
+	return v;
+    }
+
+    /**
+     * The label of the vertex with dense id i, without making the vertex.
+     * @param i
+     * @return
+     */
+    public String labelAt(int i) {
+	Vertex v = (Vertex)VERTICES.getAcquire(vertices, i);
+	return (v == null ? labels.label(i) : v.getLabel());
+    }
+
+    /**
+     * The dictionary holding the labels, whose ids are the vertex ids.  It
+     * may hold more labels than the graph has vertices.
+     */
+    LabelDictionary labels() {
+	return labels;
+    }
+
+    /**
+     * Position of the first outgoing edge of vertex id v.
+     * @param v
+     * @return
+     */
+    public int edgeStart(int v) {
+	return offsets[v];
+    }
+
+    /**
+     * Position one past the last outgoing edge of vertex id v.
+     * @param v
+     * @return
+     */
+    public int edgeEnd(int v) {
+	return offsets[v+1];
+    }
+
+    /**
+     * Target vertex id of the edge at position e.
+     * @param e
+     * @return
+     */
+    public int target(int e) {
+	return targets[e];
+    }
+
+    /**
+     * Weight of the edge at position e.
+     * @param e
+     * @return
+     */
+    public float weight(int e) {
+	return weights[e];
+    }
+
+    /**
+     * The edge at position e.
+     * @param e
+     * @return
+     */
+    public Edge edgeAt(int e) {
+	if (edges != null) {
+	    return edges[e];
+	}
+	int lo = 0;
+	int hi = vertices.length - 1;
+	while (lo < hi) {
+	    int mid = (lo + hi + 1) >>> 1;
+	    if (offsets[mid] <= e) lo = mid;
+	    else hi = mid - 1;
+	}
+	return new Edge(Integer.toString(e), weights[e], vertexAt(lo), vertexAt(targets[e]));
+    }
+
+    public void addEdge(String v, String w) {
+	throw new UnsupportedOperationException("CompactDirectedGraph is read-only");
+    }
+
+    public void addEdge(Vertex v, Vertex w) {
+	throw new UnsupportedOperationException("CompactDirectedGraph is read-only");
+    }
+
+    public void addEdge(String v, String w, float weight) {
+	throw new UnsupportedOperationException("CompactDirectedGraph is read-only");
+    }
+
+    public void addEdge(Vertex v, Vertex w, float weight) {
+	throw new UnsupportedOperationException("CompactDirectedGraph is read-only");
+    }
+
+    /**
+     * Neigbours of vertex v.  Convenience method for using a string label.
+     * @param v the vertex to find the neighbours of.
+     * @return
+     */
+    public Iterable<Vertex> adjacentTo(String v) {
+	return adjacentTo(indexOf(v));
+    }
+
+    /**
+     * Neigbours of vertex v.
+     * @param v the vertex to find the neighbours of.
+     * @return
+     */
+    public Iterable<Vertex> adjacentTo(Vertex v) {
+	return adjacentTo(indexOf(v));
+    }
+
+    /**
+     * Distinct neighbours of vertex id v, in id order.
+     * @param v
+     * @return
+     */
+    public Iterable<Vertex> adjacentTo(final int v) {
+	return new Iterable<Vertex>() {
+	    public Iterator<Vertex> iterator() {
+		return new Iterator<Vertex>() {
+		    private int e = offsets[v];
+
+		    public boolean hasNext() {
+			return e < offsets[v+1];
+		    }
+
+		    public Vertex next() {
+			if (e >= offsets[v+1]) throw new NoSuchElementException();
+			int target = targets[e];
+			while (e < offsets[v+1] && targets[e] == target) e++;
+			return vertexAt(target);
+		    }
+		};
+	    }
+	};
+    }
+
+    /**
+     * number of neighbours of vertex v.   Convenience method for using a string label.
+     * @param v
+     * @return
+     */
+    public int degree(String v) {
+	int id = indexOf(v);
+	int neighbours = 0;
+	for (int e = offsets[id]; e < offsets[id+1]; e++) {
+	    if (e == offsets[id] || targets[e] != targets[e-1]) neighbours++;
+	}
+	return neighbours;
+    }
+
+    /**
+     * number of neighbours of vertex v.
+     * @param v
+     * @return
+     */
+    public int degree(Vertex v) {
+	return degree(v.getLabel());
+    }
+
+    /**
+     * Get all the vertices associated with the graph.
+     * @return
+     */
+    public Iterable<Vertex> getVertices() {
+	for (int i = 0; i < vertices.length; i++) {
+	    vertexAt(i);
+	}
+	return Collections.unmodifiableList(Arrays.asList(vertices));
+    }
+
+    /**
+     * is v-w an edge in the graph.   Convenience method for using a string label.
+     * @param v
+     * @param w
+     * @return
+     */
+    public boolean hasEdge(String v, String w) {
+	int vi = indexOf(v);
+	int wi = indexOf(w);
+	int e = lowerBound(vi, wi);
+	return e < offsets[vi+1] && targets[e] == wi;
+    }
+
+    /**
+     * is v-w an edge in the graph
+     * @param v
+     * @param w
+     * @return
+     */
+    public boolean hasEdge(Vertex v, Vertex w) {
+	return hasEdge(v.getLabel(), w.getLabel());
+    }
+
+    public Iterable<Edge> getEdges(String v, String w) {
+	int vi = indexOf(v);
+	int wi = indexOf(w);
+	int from = lowerBound(vi, wi);
+	int to = from;
+	while (to < offsets[vi+1] && targets[to] == wi) to++;
+	if (edges == null) {
+	    ArrayList<Edge> matchingEdges = new ArrayList<Edge>(to - from);
+	    for (int e = from; e < to; e++) {
+		matchingEdges.add(new Edge(Integer.toString(e), weights[e], vertexAt(vi), vertexAt(wi)));
+	    }
+	    return matchingEdges;
+	}
+	return Collections.unmodifiableList(Arrays.asList(edges).subList(from, to));
+    }
+
+    public Iterable<Edge> getEdges(Vertex v, Vertex w) {
+	return getEdges(v.getLabel(), w.getLabel());
+    }
+
+    /**
+     * Edges leaving v in order of target id.
+     * @param v
+     * @param visitor
+     */
+    public void forEachEdge(Vertex v, EdgeVisitor visitor) {
+	int id = indexOf(v);
+	for (int e = offsets[id]; e < offsets[id+1]; e++) {
+	    visitor.visit(vertexAt(targets[e]), weights[e]);
+	}
+    }
+
+    /**
+     * is v a vertex in the graph.  Convenience method for using a string label.
+     * @param v
+     * @return
+     */
+    public boolean hasVertex(String v) {
+	return indexOf(v) >= 0;
+    }
+
+    /**
+     * is v a vertex in the graph
+     * @param v
+     * @return
+     */
+    public boolean hasVertex(Vertex vertex) {
+	return indexOf(vertex.getLabel()) >= 0;
+    }
+
+    /**
+     * Gets the vertex in the graph with the label v
+     * @param v
+     * @return
+     */
+    public Vertex getVertex(String v) {
+	int id = indexOf(v);
+	return (id < 0 ? null : vertexAt(id));
+    }
+
+}
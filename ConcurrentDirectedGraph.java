@@ -0,0 +1,492 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A directed graph that can be read by any number of threads while edges
+ * are being added.  The graph is a chain of immutable snapshots: readers
+ * take the current snapshot with one volatile read and never block or see
+ * a half made change, and a writer builds the next snapshot and publishes
+ * it in one step.
+ *
+ * Vertices get dense ids in the order they are added and are kept in
+ * segments of SEGMENT_SIZE vertices, each holding the vertices' outgoing
+ * edges as immutable rows sorted by target id.  Adding edges copies only
+ * the rows of the source vertices, the segments holding them and the
+ * short array of segments, and every other segment is shared with the
+ * previous snapshot, so a write costs about the size of the rows it
+ * touches rather than the size of the graph.  addEdges applies a whole
+ * batch with one copy of each row and one publication.
+ *
+ * Writes are serialized by the graph's lock.  The Graph methods of the
+ * graph itself each read whatever snapshot is current; take a snapshot to
+ * see one consistent state over several calls.
+ */
+public class ConcurrentDirectedGraph implements Graph {
+
+    private static final int SEGMENT_BITS = 10;
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private static final Row EMPTY_ROW = new Row(new int[0], new float[0], new Edge[0]);
+
+    private ConcurrentHashMap<String, Integer> ids;
+    private volatile Snapshot current;
+    private int edgeNo;
+
+    public ConcurrentDirectedGraph() {
+	ids = new ConcurrentHashMap<String, Integer>();
+	current = new Snapshot(new Segment[0], 0, 0, 0);
+	edgeNo = 0;
+    }
+
+    /**
+     * The outgoing edges of one vertex, sorted by target id with parallel
+     * edges in the order they were added.  Never changed once published.
+     */
+    private static class Row {
+
+	private final int[] targets;
+	private final float[] weights;
+	private final Edge[] edges;
+
+	Row(int[] targets, float[] weights, Edge[] edges) {
+	    this.targets = targets;
+	    this.weights = weights;
+	    this.edges = edges;
+	}
+
+	/**
+	 * First position whose target is not less than w.
+	 */
+	int lowerBound(int w) {
+	    int lo = 0;
+	    int hi = targets.length;
+	    while (lo < hi) {
+		int mid = (lo + hi) >>> 1;
+		if (targets[mid] < w) lo = mid + 1;
+		else hi = mid;
+	    }
+	    return lo;
+	}
+    }
+
+    /**
+     * SEGMENT_SIZE consecutive vertex ids and their rows.  Copied before
+     * it is changed once it has been published.
+     */
+    private static class Segment {
+
+	private final Vertex[] vertices;
+	private final Row[] rows;
+
+	Segment() {
+	    vertices = new Vertex[SEGMENT_SIZE];
+	    rows = new Row[SEGMENT_SIZE];
+	}
+
+	Segment(Segment s) {
+	    vertices = s.vertices.clone();
+	    rows = s.rows.clone();
+	}
+    }
+
+    /**
+     * The graph as it was after one batch of edges.  Read-only; the
+     * addEdge methods throw UnsupportedOperationException.
+     */
+    public class Snapshot implements Graph {
+
+	private final Segment[] segments;
+	private final int vertexCount;
+	private final int edgeCount;
+	private final long version;
+	private volatile CompactDirectedGraph compact;
+
+	private Snapshot(Segment[] segments, int vertexCount, int edgeCount, long version) {
+	    this.segments = segments;
+	    this.vertexCount = vertexCount;
+	    this.edgeCount = edgeCount;
+	    this.version = version;
+	}
+
+	public int vertexCount() {
+	    return vertexCount;
+	}
+
+	public int edgeCount() {
+	    return edgeCount;
+	}
+
+	/**
+	 * Number of batches applied to the graph before this snapshot.
+	 * @return
+	 */
+	public long version() {
+	    return version;
+	}
+
+	/**
+	 * Id of the vertex labelled v.
+	 * @param v
+	 * @return the id, or -1 if v is not in this snapshot
+	 */
+	public int indexOf(String v) {
+	    Integer id = ids.get(v);
+	    return (id == null || id >= vertexCount ? -1 : id);
+	}
+
+	public Vertex vertexAt(int i) {
+	    return segments[i >>> SEGMENT_BITS].vertices[i & SEGMENT_MASK];
+	}
+
+	/**
+	 * The row of vertex id v, empty for an id of -1, so vertices that are
+	 * not in the snapshot have no edges rather than failing.
+	 */
+	private Row row(int v) {
+	    if (v < 0) return EMPTY_ROW;
+	    Row row = segments[v >>> SEGMENT_BITS].rows[v & SEGMENT_MASK];
+	    return (row == null ? EMPTY_ROW : row);
+	}
+
+	/**
+	 * A compressed sparse row copy of this snapshot for running the
+	 * IndexedGraph algorithms on, made the first time it is asked for.
+	 * @return
+	 */
+	public CompactDirectedGraph toCompact() {
+	    CompactDirectedGraph result = compact;
+	    if (result == null) {
+		result = new CompactDirectedGraph(this);
+		compact = result;
+	    }
+	    return result;
+	}
+
+	public void addEdge(String v, String w) {
+	    throw new UnsupportedOperationException("Snapshots are read-only");
+	}
+
+	public void addEdge(Vertex v, Vertex w) {
+	    throw new UnsupportedOperationException("Snapshots are read-only");
+	}
+
+	public void addEdge(String v, String w, float weight) {
+	    throw new UnsupportedOperationException("Snapshots are read-only");
+	}
+
+	public void addEdge(Vertex v, Vertex w, float weight) {
+	    throw new UnsupportedOperationException("Snapshots are read-only");
+	}
+
+	public Iterable<Vertex> adjacentTo(String v) {
+	    final Row row = row(indexOf(v));
+	    return new Iterable<Vertex>() {
+		public Iterator<Vertex> iterator() {
+		    return new Iterator<Vertex>() {
+			private int e = 0;
+
+			public boolean hasNext() {
+			    return e < row.targets.length;
+			}
+
+			public Vertex next() {
+			    if (e >= row.targets.length) throw new NoSuchElementException();
+			    int target = row.targets[e];
+			    while (e < row.targets.length && row.targets[e] == target) e++;
+			    return vertexAt(target);
+			}
+		    };
+		}
+	    };
+	}
+
+	public Iterable<Vertex> adjacentTo(Vertex v) {
+	    return adjacentTo(v.getLabel());
+	}
+
+	public int degree(String v) {
+	    Row row = row(indexOf(v));
+	    int neighbours = 0;
+	    for (int e = 0; e < row.targets.length; e++) {
+		if (e == 0 || row.targets[e] != row.targets[e-1]) neighbours++;
+	    }
+	    return neighbours;
+	}
+
+	public int degree(Vertex v) {
+	    return degree(v.getLabel());
+	}
+
+	/**
+	 * The vertices in the order they were added.
+	 * @return
+	 */
+	public Iterable<Vertex> getVertices() {
+	    return new AbstractList<Vertex>() {
+		public Vertex get(int i) {
+		    if (i < 0 || i >= vertexCount) throw new IndexOutOfBoundsException(Integer.toString(i));
+		    return vertexAt(i);
+		}
+
+		public int size() {
+		    return vertexCount;
+		}
+	    };
+	}
+
+	public boolean hasEdge(String v, String w) {
+	    int vi = indexOf(v);
+	    int wi = indexOf(w);
+	    if (vi < 0 || wi < 0) return false;
+	    Row row = row(vi);
+	    int e = row.lowerBound(wi);
+	    return e < row.targets.length && row.targets[e] == wi;
+	}
+
+	public boolean hasEdge(Vertex v, Vertex w) {
+	    return hasEdge(v.getLabel(), w.getLabel());
+	}
+
+	public Iterable<Edge> getEdges(String v, String w) {
+	    int vi = indexOf(v);
+	    int wi = indexOf(w);
+	    if (vi < 0 || wi < 0) return Collections.<Edge>emptyList();
+	    Row row = row(vi);
+	    int from = row.lowerBound(wi);
+	    int to = from;
+	    while (to < row.targets.length && row.targets[to] == wi) to++;
+	    return Collections.unmodifiableList(Arrays.asList(row.edges).subList(from, to));
+	}
+
+	public Iterable<Edge> getEdges(Vertex v, Vertex w) {
+	    return getEdges(v.getLabel(), w.getLabel());
+	}
+
+	public void forEachEdge(Vertex v, EdgeVisitor visitor) {
+	    Row row = row(indexOf(v.getLabel()));
+	    for (int e = 0; e < row.targets.length; e++) {
+		visitor.visit(vertexAt(row.targets[e]), row.weights[e]);
+	    }
+	}
+
+	public boolean hasVertex(String v) {
+	    return indexOf(v) >= 0;
+	}
+
+	public boolean hasVertex(Vertex v) {
+	    return hasVertex(v.getLabel());
+	}
+
+	public Vertex getVertex(String v) {
+	    int id = indexOf(v);
+	    return (id < 0 ? null : vertexAt(id));
+	}
+    }
+
+    /**
+     * The current state of the graph.  Never blocks.
+     * @return
+     */
+    public Snapshot snapshot() {
+	return current;
+    }
+
+    public void addEdge(String v, String w) {
+	addEdge(v, w, 1.0f);
+    }
+
+    public void addEdge(Vertex v, Vertex w) {
+	addEdge(v, w, 1.0f);
+    }
+
+    public void addEdge(String v, String w, float weight) {
+	addEdges(new String[] { v }, new String[] { w }, new float[] { weight });
+    }
+
+    public void addEdge(Vertex v, Vertex w, float weight) {
+	apply(new String[] { v.getLabel() }, new String[] { w.getLabel() },
+	      new Vertex[] { v }, new Vertex[] { w }, new float[] { weight });
+    }
+
+    /**
+     * Add the edges sources[i]-destinations[i] with weights[i] and publish
+     * them together.
+     * @param sources
+     * @param destinations
+     * @param weights
+     */
+    public void addEdges(String[] sources, String[] destinations, float[] weights) {
+	if (destinations.length != sources.length || weights.length != sources.length) {
+	    throw new IllegalArgumentException("sources, destinations and weights differ in length");
+	}
+	apply(sources, destinations, null, null, weights);
+    }
+
+    /**
+     * Build the snapshot with the new edges and publish it.  New vertices
+     * are taken from sourceVertices and destinationVertices, or made if
+     * they are null.  Their ids are only added to the shared map once the
+     * whole batch has been built, just before the snapshot is published, so
+     * a batch that fails leaves no ids behind for the next one to reuse.
+     */
+    private synchronized void apply(String[] sources, String[] destinations,
+				    Vertex[] sourceVertices, Vertex[] destinationVertices, float[] weights) {
+	Snapshot s = current;
+	int count = s.vertexCount;
+	Segment[] segments = s.segments;
+	boolean[] copied = new boolean[segments.length];
+
+	HashMap<String, Integer> added = new HashMap<String, Integer>();
+	int[] from = new int[sources.length];
+	int[] to = new int[sources.length];
+	for (int i = 0; i < sources.length; i++) {
+	    for (int end = 0; end < 2; end++) {
+		String label = (end == 0 ? sources[i] : destinations[i]);
+		if (label == null) {
+		    throw new IllegalArgumentException("edge " + i + " has no " + (end == 0 ? "source" : "destination"));
+		}
+		Integer id = ids.get(label);
+		if (id == null) {
+		    id = added.get(label);
+		}
+		if (id == null) {
+		    id = count++;
+		    int segment = id >>> SEGMENT_BITS;
+		    if (segment == segments.length) {
+			segments = Arrays.copyOf(segments, segment + 1);
+			segments[segment] = new Segment();
+			copied = Arrays.copyOf(copied, segment + 1);
+			copied[segment] = true;
+		    }
+		    else if (!copied[segment]) {
+			segments = (segments == s.segments ? segments.clone() : segments);
+			segments[segment] = new Segment(segments[segment]);
+			copied[segment] = true;
+		    }
+		    Vertex[] given = (end == 0 ? sourceVertices : destinationVertices);
+		    segments[segment].vertices[id & SEGMENT_MASK] = (given == null ? new AdjacencyListVertex(label) : given[i]);
+		    added.put(label, id);
+		}
+		if (end == 0) from[i] = id;
+		else to[i] = id;
+	    }
+	}
+
+	long[] bySource = new long[sources.length];
+	for (int i = 0; i < sources.length; i++) {
+	    bySource[i] = ((long)from[i] << 32) | i;
+	}
+	Arrays.sort(bySource);
+	for (int start = 0; start < bySource.length;) {
+	    int v = (int)(bySource[start] >>> 32);
+	    int end = start;
+	    while (end < bySource.length && (int)(bySource[end] >>> 32) == v) end++;
+	    int segment = v >>> SEGMENT_BITS;
+	    if (!copied[segment]) {
+		segments = (segments == s.segments ? segments.clone() : segments);
+		segments[segment] = new Segment(segments[segment]);
+		copied[segment] = true;
+	    }
+	    Segment seg = segments[segment];
+	    Row old = seg.rows[v & SEGMENT_MASK];
+	    seg.rows[v & SEGMENT_MASK] = merge((old == null ? EMPTY_ROW : old), seg.vertices[v & SEGMENT_MASK],
+					       bySource, start, end, to, weights, segments);
+	    start = end;
+	}
+	ids.putAll(added);
+	current = new Snapshot(segments, count, s.edgeCount + sources.length, s.version + 1);
+    }
+
+    /**
+     * A copy of old with the batch edges bySource[start, end) added after
+     * any existing edges to the same target.
+     */
+    private Row merge(Row old, Vertex source, long[] bySource, int start, int end,
+		      int[] to, float[] weights, Segment[] segments) {
+	int added = end - start;
+	long[] byTarget = new long[added];
+	for (int i = 0; i < added; i++) {
+	    int edge = (int)bySource[start + i];
+	    byTarget[i] = ((long)to[edge] << 32) | edge;
+	}
+	Arrays.sort(byTarget);
+
+	int length = old.targets.length + added;
+	int[] targets = new int[length];
+	float[] rowWeights = new float[length];
+	Edge[] edges = new Edge[length];
+	int i = 0;
+	int j = 0;
+	for (int k = 0; k < length; k++) {
+	    int newTarget = (j < added ? (int)(byTarget[j] >>> 32) : Integer.MAX_VALUE);
+	    if (i < old.targets.length && old.targets[i] <= newTarget) {
+		targets[k] = old.targets[i];
+		rowWeights[k] = old.weights[i];
+		edges[k] = old.edges[i];
+		i++;
+	    }
+	    else {
+		int edge = (int)byTarget[j++];
+		Vertex destination = segments[newTarget >>> SEGMENT_BITS].vertices[newTarget & SEGMENT_MASK];
+		targets[k] = newTarget;
+		rowWeights[k] = weights[edge];
+		edges[k] = new Edge(Integer.toString(++edgeNo), weights[edge], source, destination);
+	    }
+	}
+	return new Row(targets, rowWeights, edges);
+    }
+
+    public Iterable<Vertex> adjacentTo(String v) {
+	return current.adjacentTo(v);
+    }
+
+    public Iterable<Vertex> adjacentTo(Vertex v) {
+	return current.adjacentTo(v);
+    }
+
+    public int degree(String v) {
+	return current.degree(v);
+    }
+
+    public int degree(Vertex v) {
+	return current.degree(v);
+    }
+
+    public Iterable<Vertex> getVertices() {
+	return current.getVertices();
+    }
+
+    public boolean hasEdge(String v, String w) {
+	return current.hasEdge(v, w);
+    }
+
+    public boolean hasEdge(Vertex v, Vertex w) {
+	return current.hasEdge(v, w);
+    }
+
+    public Iterable<Edge> getEdges(String v, String w) {
+	return current.getEdges(v, w);
+    }
+
+    public Iterable<Edge> getEdges(Vertex v, Vertex w) {
+	return current.getEdges(v, w);
+    }
+
+    public void forEachEdge(Vertex v, EdgeVisitor visitor) {
+	current.forEachEdge(v, visitor);
+    }
+
+    public boolean hasVertex(String v) {
+	return current.hasVertex(v);
+    }
+
+    public boolean hasVertex(Vertex v) {
+	return current.hasVertex(v);
+    }
+
+    public Vertex getVertex(String v) {
+	return current.getVertex(v);
+    }
+
+}
@@ -0,0 +1,420 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Parallel single-source shortest paths by delta-stepping (Meyer and
+ * Sanders).  Tentative distances are sorted into buckets of width delta.
+ * The lowest non-empty bucket is settled by relaxing the light edges
+ * (weight at most delta) of all its vertices at once, repeatedly until no
+ * vertex falls back into it, and then the heavy edges of everything it
+ * held, which can only reach later buckets.  Each round of relaxations is
+ * split over a fork-join pool, with distances lowered by compare-and-set,
+ * so a wide frontier keeps every worker busy where Dijkstra's algorithm
+ * could only take one vertex at a time.
+ *
+ * A small delta does little wasted work but has many buckets with little
+ * parallelism in each; a large one has the opposite trade-off.  The
+ * default is the largest edge weight over the average out-degree.  Only
+ * buckets holding vertices are kept, in a map sorted by bucket number, so
+ * a small delta or long paths cost no space for the empty ones between.
+ *
+ * Distances are the same as those found by Dijkstra's algorithm.  Once
+ * they are known each vertex's predecessor is chosen from the edges into
+ * it that give its distance, preferring the source vertex nearest the
+ * start, then the lowest id, which is the order Dijkstra's algorithm
+ * settles them in.  An instance only reads the graph and may run several
+ * queries at once.
+ */
+public class DeltaSteppingShortestPaths {
+
+    private static final int LEAF_SIZE = 256;
+    private static final int INFINITY = Float.floatToIntBits(Float.POSITIVE_INFINITY);
+
+    private IndexedGraph g;
+    private float delta;
+    private ForkJoinPool pool;
+
+    /**
+     * Run on the common fork-join pool with the default delta.
+     * @param g
+     */
+    public DeltaSteppingShortestPaths(IndexedGraph g) {
+	this(g, defaultDelta(g), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param g a graph with no negative edge weights
+     * @param delta the bucket width, greater than zero
+     * @param pool the workers to relax edges on
+     */
+    public DeltaSteppingShortestPaths(IndexedGraph g, float delta, ForkJoinPool pool) {
+	if (!(delta > 0.0f)) {
+	    throw new IllegalArgumentException("delta must be greater than zero");
+	}
+	this.g = g;
+	this.delta = delta;
+	this.pool = pool;
+    }
+
+    /**
+     * Shortest paths from s in g on the common pool.  Graphs that are not
+     * already indexed are frozen into a CompactDirectedGraph first.
+     * @param g
+     * @param s
+     * @return
+     */
+    public static ShortestPathResult shortestPaths(Graph g, Vertex s) {
+	IndexedGraph ig = CompactDirectedGraph.indexed(g);
+	return new DeltaSteppingShortestPaths(ig).run(ig.indexOf(s));
+    }
+
+    /**
+     * The largest edge weight divided by the average out-degree, or 1 for a
+     * graph without positive weights.
+     * @param g
+     * @return
+     */
+    public static float defaultDelta(IndexedGraph g) {
+	float maxWeight = 0.0f;
+	for (int e = 0; e < g.edgeCount(); e++) {
+	    maxWeight = Math.max(maxWeight, g.weight(e));
+	}
+	if (maxWeight <= 0.0f) return 1.0f;
+	return maxWeight * g.vertexCount() / g.edgeCount();
+    }
+
+    public IndexedGraph getGraph() {
+	return g;
+    }
+
+    public float getDelta() {
+	return delta;
+    }
+
+    /**
+     * Shortest paths from the vertex with id source.
+     * @param source
+     * @return
+     */
+    public ShortestPathResult run(int source) {
+	return new Query(source).run();
+    }
+
+    /**
+     * A growable list of vertex ids.
+     */
+    private static class IntList {
+
+	private int[] items = new int[16];
+	private int size;
+
+	void add(int v) {
+	    if (size == items.length) items = Arrays.copyOf(items, size*2);
+	    items[size++] = v;
+	}
+
+	void addAll(IntList list) {
+	    if (size + list.size > items.length) {
+		items = Arrays.copyOf(items, Math.max(items.length*2, size + list.size));
+	    }
+	    System.arraycopy(list.items, 0, items, size, list.size);
+	    size += list.size;
+	}
+    }
+
+    /**
+     * The state of one search.
+     */
+    private class Query {
+
+	private int source;
+	private AtomicIntegerArray distance;
+	private AtomicIntegerArray mark;
+	private int round;
+	private long edgesScanned;
+	private long relaxations;
+	private TreeMap<Long, IntList> buckets = new TreeMap<Long, IntList>();
+
+	Query(int source) {
+	    this.source = source;
+	    int n = g.vertexCount();
+	    int[] infinite = new int[n];
+	    Arrays.fill(infinite, INFINITY);
+	    distance = new AtomicIntegerArray(infinite);
+	    mark = new AtomicIntegerArray(n);
+	}
+
+	ShortestPathResult run() {
+	    GraphMetrics.Query metrics = GraphMetrics.DELTA_STEPPING.start();
+	    distance.set(source, Float.floatToIntBits(0.0f));
+	    bucket(0).add(source);
+	    while (!buckets.isEmpty()) {
+		Map.Entry<Long, IntList> first = buckets.pollFirstEntry();
+		long k = first.getKey();
+		IntList entries = first.getValue();
+		round++;
+		IntList frontier = new IntList();
+		for (int i = 0; i < entries.size; i++) {
+		    int v = entries.items[i];
+		    if (bucketOf(distanceOf(v)) == k && mark.get(v) != round) {
+			mark.set(v, round);
+			frontier.add(v);
+		    }
+		}
+		while (frontier.size > 0) {
+		    IntList settled = new IntList();
+		    while (frontier.size > 0) {
+			settled.addAll(frontier);
+			frontier = relax(frontier, k, true);
+		    }
+		    frontier = relax(settled, k, false);
+		}
+	    }
+
+	    float[] result = new float[g.vertexCount()];
+	    int reached = 0;
+	    for (int v = 0; v < result.length; v++) {
+		result[v] = distanceOf(v);
+		if (result[v] != Float.POSITIVE_INFINITY) reached++;
+	    }
+	    ShortestPathResult paths = new ShortestPathResult(g, source, result, predecessors(result));
+	    if (metrics != null) {
+		metrics.stop(reached, edgesScanned, relaxations);
+	    }
+	    return paths;
+	}
+
+	private float distanceOf(int v) {
+	    return Float.intBitsToFloat(distance.get(v));
+	}
+
+	/**
+	 * The number of the bucket for distance d.  Numbers past
+	 * Long.MAX_VALUE all fall into that bucket, which is still settled
+	 * correctly since a bucket is relaxed until nothing in it improves.
+	 */
+	private long bucketOf(float d) {
+	    return (long)((double)d / delta);
+	}
+
+	private IntList bucket(long k) {
+	    IntList b = buckets.get(k);
+	    if (b == null) {
+		b = new IntList();
+		buckets.put(k, b);
+	    }
+	    return b;
+	}
+
+	/**
+	 * Relax the light or heavy edges of every vertex in frontier, which
+	 * are all in bucket k.  Vertices improved into later buckets are
+	 * filed there.
+	 * @return the vertices improved into bucket k, once each
+	 */
+	private IntList relax(IntList frontier, long k, boolean light) {
+	    round++;
+	    Relaxation all = new Relaxation(frontier, 0, frontier.size, k, light);
+	    if (frontier.size <= LEAF_SIZE) {
+		all.compute();
+	    }
+	    else {
+		pool.invoke(all);
+	    }
+	    IntList near = new IntList();
+	    for (Relaxation leaf : all.leaves) {
+		edgesScanned += leaf.scanned;
+		relaxations += leaf.lowered;
+		near.addAll(leaf.near);
+		for (int i = 0; i < leaf.far.size; i++) {
+		    int w = leaf.far.items[i];
+		    long kw = bucketOf(distanceOf(w));
+		    if (kw > k) bucket(kw).add(w);
+		}
+	    }
+	    return near;
+	}
+
+	/**
+	 * Relaxes the edges of a range of the frontier, halving it until it
+	 * is at most LEAF_SIZE vertices.
+	 */
+	private class Relaxation extends RecursiveAction {
+
+	    private static final long serialVersionUID = 1L;
+
+	    private IntList frontier;
+	    private int from;
+	    private int to;
+	    private long k;
+	    private boolean light;
+	    private Queue<Relaxation> leaves;
+	    private IntList near = new IntList();
+	    private IntList far = new IntList();
+	    private long scanned;
+	    private long lowered;
+
+	    Relaxation(IntList frontier, int from, int to, long k, boolean light) {
+		this(frontier, from, to, k, light, new ConcurrentLinkedQueue<Relaxation>());
+	    }
+
+	    private Relaxation(IntList frontier, int from, int to, long k, boolean light, Queue<Relaxation> leaves) {
+		this.frontier = frontier;
+		this.from = from;
+		this.to = to;
+		this.k = k;
+		this.light = light;
+		this.leaves = leaves;
+	    }
+
+	    protected void compute() {
+		if (to - from > LEAF_SIZE) {
+		    int mid = (from + to) >>> 1;
+		    invokeAll(new Relaxation(frontier, from, mid, k, light, leaves),
+			      new Relaxation(frontier, mid, to, k, light, leaves));
+		    return;
+		}
+		for (int i = from; i < to; i++) {
+		    int v = frontier.items[i];
+		    float dv = distanceOf(v);
+		    for (int e = g.edgeStart(v), end = g.edgeEnd(v); e < end; e++) {
+			float weight = g.weight(e);
+			if ((weight <= delta) != light) continue;
+			scanned++;
+			int w = g.target(e);
+			float dw = dv + weight;
+			if (lower(w, dw)) {
+			    lowered++;
+			    if (bucketOf(dw) <= k) {
+				if (mark.getAndSet(w, round) != round) near.add(w);
+			    }
+			    else {
+				far.add(w);
+			    }
+			}
+		    }
+		}
+		leaves.add(this);
+	    }
+	}
+
+	/**
+	 * Set the distance of w to d if that is lower.
+	 * @return true if it was lowered
+	 */
+	private boolean lower(int w, float d) {
+	    int bits = Float.floatToIntBits(d);
+	    while (true) {
+		int current = distance.get(w);
+		if (bits >= current) return false;
+		if (distance.compareAndSet(w, current, bits)) return true;
+	    }
+	}
+
+	/**
+	 * For every reached vertex, the edge into it that gives its distance
+	 * from the nearest, then lowest numbered, vertex.  Edges whose weight
+	 * adds nothing to the distance could make such choices into a cycle;
+	 * if any predecessor is no nearer than its vertex the predecessors
+	 * are chosen again in order of distance from the source.
+	 */
+	private int[] predecessors(float[] distance) {
+	    int n = g.vertexCount();
+	    AtomicLongArray best = new AtomicLongArray(n);
+	    for (int v = 0; v < n; v++) {
+		best.set(v, Long.MAX_VALUE);
+	    }
+	    Predecessors all = new Predecessors(distance, best, 0, n);
+	    if (n <= LEAF_SIZE * 16) {
+		all.compute();
+	    }
+	    else {
+		pool.invoke(all);
+	    }
+
+	    int[] predecessor = new int[n];
+	    boolean ordered = true;
+	    for (int v = 0; v < n; v++) {
+		long key = best.get(v);
+		predecessor[v] = (key == Long.MAX_VALUE ? -1 : (int)key);
+		if (predecessor[v] >= 0 && distance[predecessor[v]] >= distance[v]) ordered = false;
+	    }
+	    if (!ordered) {
+		tightPredecessors(distance, predecessor);
+	    }
+	    return predecessor;
+	}
+
+	/**
+	 * Offers each vertex of a range as the predecessor of the targets of
+	 * its edges that give their distance, keeping the lowest key of
+	 * distance and id for each target.
+	 */
+	private class Predecessors extends RecursiveAction {
+
+	    private static final long serialVersionUID = 1L;
+
+	    private float[] distance;
+	    private AtomicLongArray best;
+	    private int from;
+	    private int to;
+
+	    Predecessors(float[] distance, AtomicLongArray best, int from, int to) {
+		this.distance = distance;
+		this.best = best;
+		this.from = from;
+		this.to = to;
+	    }
+
+	    protected void compute() {
+		if (to - from > LEAF_SIZE * 16) {
+		    int mid = (from + to) >>> 1;
+		    invokeAll(new Predecessors(distance, best, from, mid),
+			      new Predecessors(distance, best, mid, to));
+		    return;
+		}
+		for (int v = from; v < to; v++) {
+		    float dv = distance[v];
+		    if (dv == Float.POSITIVE_INFINITY) continue;
+		    long key = ((long)Float.floatToIntBits(dv) << 32) | v;
+		    for (int e = g.edgeStart(v), end = g.edgeEnd(v); e < end; e++) {
+			int w = g.target(e);
+			if (w == source || dv + g.weight(e) != distance[w]) continue;
+			while (true) {
+			    long current = best.get(w);
+			    if (key >= current || best.compareAndSet(w, current, key)) break;
+			}
+		    }
+		}
+	    }
+	}
+
+	/**
+	 * Choose predecessors by searching out from the source along edges
+	 * that give their target's distance, taking vertices in order of
+	 * distance and then id, so every vertex is reached from one already
+	 * chosen.
+	 */
+	private void tightPredecessors(float[] distance, int[] predecessor) {
+	    int n = g.vertexCount();
+	    Arrays.fill(predecessor, -1);
+	    boolean[] reached = new boolean[n];
+	    IndexedPriorityQ q = new IndexedPriorityQ(n);
+	    reached[source] = true;
+	    q.offer(source, distance[source]);
+	    while (!q.isEmpty()) {
+		int v = q.poll();
+		for (int e = g.edgeStart(v), end = g.edgeEnd(v); e < end; e++) {
+		    int w = g.target(e);
+		    if (!reached[w] && distance[v] + g.weight(e) == distance[w]) {
+			reached[w] = true;
+			predecessor[w] = v;
+			q.offer(w, distance[w]);
+		    }
+		}
+	    }
+	}
+    }
+
+}
@@ -5,55 +5,144 @@
 import java.util.*;
 
 /**
+ * Depth first traversal and topological sort.  The search is iterative,
+ * keeping the current path on an explicit int stack rather than the
+ * thread stack, so paths millions of vertices long are fine.
  *
  * @author lewi0146
  */
 public class DepthFirstTraversal {
 
     public static List<Vertex> traverse(Graph g) {
-	LinkedList<Vertex> l = new LinkedList<Vertex>();
-	Iterable<Vertex> verts = g.getVertices();
-	for (Iterator<Vertex> i = verts.iterator(); i.hasNext();) {
-	    i.next().setToUndiscovered();
-	}
-	for (Iterator<Vertex> i = verts.iterator(); i.hasNext();) {
-	    Vertex v = i.next();
-	    if (v.isUndiscovered()) {
-		visit(g, v, l);
-	    }
-	}
+	IndexedGraph ig = CompactDirectedGraph.indexed(g);
+	return toVertices(ig, postorder(ig));
+    }
 
-	return l;
+    public static List<Vertex> topologicalSort(AdjacencyListDirectedGraph g) {
+	IndexedGraph ig = g.freeze();
+	return toVertices(ig, topologicalOrder(ig));
     }
 
-    private static List<Vertex> visit(Graph g, Vertex s, List<Vertex> l) {
-	s.setToDiscovered();
+    /**
+     * Vertex ids of g in the order a depth first search first reaches them,
+     * starting from each vertex in id order.
+     * @param g
+     * @return
+     */
+    public static int[] preorder(IndexedGraph g) {
+	int[] preorder = new int[g.vertexCount()];
+	search(g, allVertices(g), preorder, null);
+	return preorder;
+    }
 
-	Iterable<Vertex> adjs = g.adjacentTo(s);
-	for (Iterator<Vertex> i = adjs.iterator(); i.hasNext();) {
-	    Vertex v = i.next();
-	    if (v.isUndiscovered()) {
-		visit(g, v, l);
-	    }
+    /**
+     * Vertex ids of g in the order a depth first search finishes them,
+     * starting from each vertex in id order.
+     * @param g
+     * @return
+     */
+    public static int[] postorder(IndexedGraph g) {
+	int[] postorder = new int[g.vertexCount()];
+	search(g, allVertices(g), null, postorder);
+	return postorder;
+    }
+
+    /**
+     * Reverse postorder of a search from the vertices with no incoming
+     * edges.  If g has a cycle the vertices only reachable through it are
+     * left out.
+     * @param g
+     * @return the vertex ids in topological order
+     */
+    public static int[] topologicalOrder(IndexedGraph g) {
+	int n = g.vertexCount();
+	int[] inDegree = new int[n];
+	for (int e = 0, m = g.edgeCount(); e < m; e++) {
+	    inDegree[g.target(e)]++;
+	}
+	int rootCount = 0;
+	for (int v = 0; v < n; v++) {
+	    if (inDegree[v] == 0) inDegree[rootCount++] = v;
 	}
+	int[] postorder = new int[n];
+	int reached = search(g, Arrays.copyOf(inDegree, rootCount), null, postorder);
+	int[] order = new int[reached];
+	for (int i = 0; i < reached; i++) {
+	    order[i] = postorder[reached-1-i];
+	}
+	return order;
+    }
 
-	s.setToFinished();
-	l.add(s);
-	return l;
+    private static int[] allVertices(IndexedGraph g) {
+	int[] roots = new int[g.vertexCount()];
+	for (int v = 0; v < roots.length; v++) {
+	    roots[v] = v;
+	}
+	return roots;
     }
 
-    public static List<Vertex> topologicalSort(AdjacencyListDirectedGraph g) {
-	LinkedList<Vertex> l = new LinkedList<Vertex>();
-	Iterable<Vertex> allVerts = g.getVertices();
-	Iterable<Vertex> verts = g.getZeroInDegree();
-	for (Iterator<Vertex> i = allVerts.iterator(); i.hasNext();) {
-	    i.next().setToUndiscovered();
+    /**
+     * Search from each root in turn, skipping roots already reached.  The
+     * stack holds the current path and, for each vertex on it, the position
+     * of the next edge to follow.
+     * @param preorder filled with vertices as they are reached, may be null
+     * @param postorder filled with vertices as they are finished, may be null
+     * @return the number of vertices reached
+     */
+    private static int search(IndexedGraph g, int[] roots, int[] preorder, int[] postorder) {
+	GraphMetrics.Query metrics = GraphMetrics.DFS.start();
+	int n = g.vertexCount();
+	boolean[] discovered = new boolean[n];
+	int[] path = new int[n];
+	int[] nextEdge = new int[n];
+	int reached = 0;
+	int finished = 0;
+	int trees = 0;
+	long scanned = 0;
+	for (int root : roots) {
+	    if (discovered[root]) continue;
+	    discovered[root] = true;
+	    trees++;
+	    if (preorder != null) preorder[reached] = root;
+	    reached++;
+	    int depth = 0;
+	    path[0] = root;
+	    nextEdge[0] = g.edgeStart(root);
+	    while (depth >= 0) {
+		int v = path[depth];
+		int e = nextEdge[depth];
+		if (e < g.edgeEnd(v)) {
+		    nextEdge[depth] = e + 1;
+		    int w = g.target(e);
+		    if (!discovered[w]) {
+			discovered[w] = true;
+			if (preorder != null) preorder[reached] = w;
+			reached++;
+			depth++;
+			path[depth] = w;
+			nextEdge[depth] = g.edgeStart(w);
+		    }
+		}
+		else {
+		    scanned += e - g.edgeStart(v);
+		    if (postorder != null) postorder[finished] = v;
+		    finished++;
+		    depth--;
+		}
+	    }
 	}
-	for (Iterator<Vertex> i = verts.iterator(); i.hasNext();) {
-	    visit(g, i.next(), l);
+	if (metrics != null) {
+	    metrics.stop(reached, scanned, reached - trees);
 	}
-	Collections.reverse(l);
-        return l;
+	return reached;
+    }
+
+    private static List<Vertex> toVertices(IndexedGraph g, int[] ids) {
+	ArrayList<Vertex> l = new ArrayList<Vertex>(ids.length);
+	for (int id : ids) {
+	    l.add(g.vertexAt(id));
+	}
+	return l;
     }
 
 }
@@ -0,0 +1,102 @@
+import java.util.*;
+
+/**
+ * Dijkstra's algorithm over the int ids of an IndexedGraph.  All search
+ * state lives in a QueryContext that is kept between calls to run, so one
+ * instance can answer many single-source queries on the same graph without
+ * reallocating it, and the graph itself is only read.  An instance is not
+ * safe for use by several threads at once; give each thread its own.
+ */
+public class DijkstraShortestPaths {
+
+    private IndexedGraph g;
+    private QueryContext context;
+
+    public DijkstraShortestPaths(IndexedGraph g) {
+	this(new QueryContext(g));
+    }
+
+    public DijkstraShortestPaths(QueryContext context) {
+	this.g = context.getGraph();
+	this.context = context;
+    }
+
+    /**
+     * Shortest paths from s in g.  Graphs that are not already indexed are
+     * frozen into a CompactDirectedGraph first.
+     * @param g
+     * @param s
+     * @return
+     */
+    public static ShortestPathResult shortestPaths(Graph g, Vertex s) {
+	IndexedGraph ig = CompactDirectedGraph.indexed(g);
+	return new DijkstraShortestPaths(ig).run(ig.indexOf(s));
+    }
+
+    public IndexedGraph getGraph() {
+	return g;
+    }
+
+    /**
+     * Shortest paths from the vertex with id source.
+     * @param source
+     * @return
+     */
+    public ShortestPathResult run(int source) {
+	search(source);
+	return new ShortestPathResult(g, source, context.distances().clone(), context.predecessors().clone());
+    }
+
+    /**
+     * Shortest paths from the vertex with id source, without copying them
+     * out of the context.  The result is overwritten by the next query on
+     * this instance, so copy out anything that has to outlive it.
+     * @param source
+     * @return
+     */
+    public ShortestPathResult runInContext(int source) {
+	search(source);
+	return new ShortestPathResult(g, source, context.distances(), context.predecessors());
+    }
+
+    /**
+     * Fill the context's distance and predecessor arrays with the shortest
+     * paths from source.
+     */
+    private void search(int source) {
+	float[] distance = context.distances();
+	int[] predecessor = context.predecessors();
+	IndexedPriorityQ q = context.heap();
+	GraphMetrics.Query metrics = GraphMetrics.DIJKSTRA.start(q);
+	Arrays.fill(distance, Float.POSITIVE_INFINITY);
+	Arrays.fill(predecessor, -1);
+
+	context.reset();
+	distance[source] = 0.0f;
+	q.offer(source, 0.0f);
+	int settled = 0;
+	long scanned = 0;
+	long relaxations = 0;
+	while (!q.isEmpty()) {
+	    int v = q.poll();
+	    float dv = distance[v];
+	    int start = g.edgeStart(v), end = g.edgeEnd(v);
+	    settled++;
+	    scanned += end - start;
+	    for (int e = start; e < end; e++) {
+		int w = g.target(e);
+		float dw = dv + g.weight(e);
+		if (dw < distance[w]) {
+		    relaxations++;
+		    distance[w] = dw;
+		    predecessor[w] = v;
+		    q.offerOrDecrease(w, dw);
+		}
+	    }
+	}
+	if (metrics != null) {
+	    metrics.stop(settled, scanned, relaxations);
+	}
+    }
+
+}
@@ -0,0 +1,70 @@
+import java.util.*;
+
+/**
+ * The parallel edges from one source vertex to one destination vertex, in
+ * the order they were added.  The lightest edge is tracked as edges are
+ * added so shortest path code can read it without scanning the bucket.
+ */
+public class EdgeBucket implements Iterable<Edge> {
+
+    private Edge[] edges;
+    private int size;
+    private Edge smallest;
+
+    public EdgeBucket() {
+	edges = new Edge[1];
+	size = 0;
+	smallest = null;
+    }
+
+    public void add(Edge e) {
+	if (size == edges.length) {
+	    edges = Arrays.copyOf(edges, size*2);
+	}
+	edges[size++] = e;
+	if (smallest == null || e.getWeight() < smallest.getWeight()) {
+	    smallest = e;
+	}
+    }
+
+    public int size() {
+	return size;
+    }
+
+    /**
+     * The i'th edge added.
+     * @param i
+     * @return
+     */
+    public Edge get(int i) {
+	return edges[i];
+    }
+
+    public Vertex getDestination() {
+	return edges[0].getDestination();
+    }
+
+    /**
+     * The edge with the smallest weight, the earliest added on a tie.
+     * @return
+     */
+    public Edge getSmallestEdge() {
+	return smallest;
+    }
+
+    public Iterator<Edge> iterator() {
+	return new Iterator<Edge>() {
+	    private int i = 0;
+
+	    public boolean hasNext() {
+		return i < size;
+	    }
+
+	    public Edge next() {
+		if (i >= size) throw new NoSuchElementException();
+		return edges[i++];
+	    }
+	};
+    }
+
+}
@@ -5,6 +5,18 @@
 
 public interface Graph {
 
+    /**
+     * Receives the outgoing edges of a vertex from forEachEdge.
+     */
+    interface EdgeVisitor {
+
+	/**
+	 * @param w the vertex the edge goes to
+	 * @param weight the weight of the edge
+	 */
+	void visit(Vertex w, float weight);
+    }
+
     /**
      * Add edge v-w.  Convenience method for adding using a string label.
      * @param v vertex v of the edge
@@ -89,6 +101,15 @@ public interface Graph {
 
     Iterable<Edge> getEdges(Vertex v, Vertex w);
 
+    /**
+     * Call visitor once for every edge leaving v, parallel edges included,
+     * without allocating a collection of neighbours.  The order of the
+     * edges is up to the graph.
+     * @param v
+     * @param visitor
+     */
+    void forEachEdge(Vertex v, EdgeVisitor visitor);
+
     /**
      * is v a vertex in the graph.  Convenience method for using a string label.
      * @param v
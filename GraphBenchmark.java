@@ -0,0 +1,570 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Micro benchmarks for the graph structures and algorithms.  Each
+ * benchmark is warmed up for a fixed time before it is measured, so the
+ * JIT has compiled the hot code, and then run repeatedly while recording
+ * the time of every call.  Reports throughput, latency percentiles and
+ * bytes allocated per call (when the JVM can count them) by the calling
+ * thread and the fork-join workers the parallel searches run on.
+ *
+ * usage: java GraphBenchmark [-warmup ms] [-measure ms] [file ...]
+ * With no files the bundled graphPos*.txt inputs are used.  Generated
+ * random, R-MAT and grid graphs of increasing size are always benchmarked
+ * as well.
+ */
+public class GraphBenchmark {
+
+    private static final String[] BUNDLED = {
+	"graphPosLittle.txt", "graphPosMes.txt", "graphPosMidA.txt", "graphPosMidB.txt", "graphPosBig.txt"
+    };
+    private static final int[] SYNTHETIC_SIZES = { 1000, 10000, 100000 };
+    private static final String[] SYNTHETIC_TYPES = { "random", "rmat", "grid" };
+    private static final int LIST_DIJKSTRA_LIMIT = 5000;
+    private static final int MULTI_SOURCE_COUNT = 64;
+    private static final int CACHE_QUERIES = 64;
+    private static final int CACHE_HOT_SOURCES = 8;
+    private static final int WRITE_BATCH = 64;
+    private static final int READ_VERTICES = 64;
+
+    private static long warmupMillis = 1000;
+    private static long measureMillis = 2000;
+    private static volatile Object sink;
+
+    /**
+     * A piece of work to be timed.  setUp is called once before warm-up and
+     * is not timed.
+     */
+    private static abstract class Benchmark {
+	String name;
+
+	Benchmark(String name) {
+	    this.name = name;
+	}
+
+	void setUp() {
+	}
+
+	abstract Object run();
+    }
+
+    public static void main(String[] args) {
+	ArrayList<String> files = new ArrayList<String>();
+	for (int i = 0; i < args.length; i++) {
+	    switch (args[i]) {
+	    case "-warmup":
+		warmupMillis = Long.parseLong(args[++i]);
+		break;
+	    case "-measure":
+		measureMillis = Long.parseLong(args[++i]);
+		break;
+	    default:
+		files.add(args[i]);
+	    }
+	}
+	if (files.isEmpty()) {
+	    files.addAll(Arrays.asList(BUNDLED));
+	}
+
+	System.out.println(String.format("%-48s %12s %10s %10s %10s %10s %12s",
+					 "benchmark", "ops/s", "p50 us", "p90 us", "p99 us", "max us", "bytes/op"));
+	for (String file : files) {
+	    AdjacencyListDirectedGraph g = GraphTester.readFile(file);
+	    if (g != null) {
+		benchmarkGraph(file, g);
+	    }
+	}
+	for (int n : SYNTHETIC_SIZES) {
+	    for (String type : SYNTHETIC_TYPES) {
+		GraphGenerator generator = GraphGenerator.byName(type, n, n);
+		long startTime = System.nanoTime();
+		AdjacencyListDirectedGraph g = generator.toGraph();
+		long endTime = System.nanoTime();
+		System.out.println(type + n + ": " + GraphGenerator.report(generator, g.freeze().edgeCount(), endTime-startTime));
+		benchmarkGraph(type + n, g);
+	    }
+	}
+	benchmarkQueues();
+    }
+
+    private static void benchmarkGraph(String name, final AdjacencyListDirectedGraph g) {
+	final Vertex source = g.getVertex("1");
+	final CompactDirectedGraph cg = g.freeze();
+	final int vertexCount = cg.vertexCount();
+	final String[][] edgeList = new String[cg.edgeCount()][];
+	final float[] edgeWeights = new float[cg.edgeCount()];
+	for (int e = 0, v = 0; v < vertexCount; v++) {
+	    for (; e < cg.edgeEnd(v); e++) {
+		edgeList[e] = new String[] { cg.vertexAt(v).getLabel(), cg.vertexAt(cg.target(e)).getLabel() };
+		edgeWeights[e] = cg.weight(e);
+	    }
+	}
+
+	final MappedDirectedGraph offHeap = MappedDirectedGraph.offHeap(cg);
+	ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+	benchmarks.add(new Benchmark(name + " getShortestPathsPriorityQueue") {
+		Object run() {
+		    return AdjacencyListDirectedGraph.getShortestPathsPriorityQueue(g, source);
+		}
+	    });
+	if (vertexCount <= LIST_DIJKSTRA_LIMIT) {
+	    benchmarks.add(new Benchmark(name + " getShortestPathsList") {
+		    Object run() {
+			return AdjacencyListDirectedGraph.getShortestPathsList(g, source);
+		    }
+		});
+	}
+	benchmarks.add(new Benchmark(name + " DijkstraShortestPaths") {
+		DijkstraShortestPaths engine;
+		int s;
+
+		void setUp() {
+		    engine = new DijkstraShortestPaths(cg);
+		    s = cg.indexOf(source);
+		}
+
+		Object run() {
+		    return engine.run(s);
+		}
+	    });
+	benchmarks.add(new Benchmark(name + " DijkstraShortestPaths off-heap") {
+		DijkstraShortestPaths engine;
+		int s;
+
+		void setUp() {
+		    engine = new DijkstraShortestPaths(offHeap);
+		    s = offHeap.indexOf(source);
+		}
+
+		Object run() {
+		    return engine.run(s);
+		}
+	    });
+	benchmarks.add(new Benchmark(name + " PointToPoint") {
+		PointToPointShortestPath search;
+		int s;
+
+		void setUp() {
+		    search = new PointToPointShortestPath(cg);
+		    s = cg.indexOf(source);
+		}
+
+		Object run() {
+		    return search.shortestPath(s, vertexCount-1);
+		}
+	    });
+	benchmarks.add(new Benchmark(name + " PointToPoint bidirectional") {
+		PointToPointShortestPath search;
+		int s;
+
+		void setUp() {
+		    search = new PointToPointShortestPath(cg, CompactDirectedGraph.transpose(cg));
+		    s = cg.indexOf(source);
+		}
+
+		Object run() {
+		    return search.bidirectional(s, vertexCount-1);
+		}
+	    });
+	benchmarks.add(new Benchmark(name + " AStar landmarks") {
+		AStarShortestPath search;
+		int s;
+
+		void setUp() {
+		    search = new AStarShortestPath(cg, LandmarkHeuristic.build(cg));
+		    s = cg.indexOf(source);
+		}
+
+		Object run() {
+		    return search.shortestPath(s, vertexCount-1);
+		}
+	    });
+	benchmarks.add(new Benchmark(name + " addEdge") {
+		Object run() {
+		    AdjacencyListDirectedGraph built = new AdjacencyListDirectedGraph();
+		    for (int e = 0; e < edgeList.length; e++) {
+			built.addEdge(edgeList[e][0], edgeList[e][1], edgeWeights[e]);
+		    }
+		    return built;
+		}
+	    });
+	benchmarks.add(new Benchmark(name + " GraphBuilder toCompactGraph") {
+		Object run() {
+		    GraphBuilder builder = new GraphBuilder(vertexCount, edgeList.length);
+		    for (int e = 0; e < edgeList.length; e++) {
+			builder.addEdge(edgeList[e][0], edgeList[e][1], edgeWeights[e]);
+		    }
+		    return builder.toCompactGraph();
+		}
+	    });
+	benchmarks.add(new Benchmark(name + " adjacentTo (all vertices)") {
+		Object run() {
+		    int count = 0;
+		    for (Vertex v : g.getVertices()) {
+			for (Vertex w : g.adjacentTo(v)) {
+			    count++;
+			}
+		    }
+		    return count;
+		}
+	    });
+	benchmarks.add(new Benchmark(name + " forEachEdge (all vertices)") {
+		float total;
+		Graph.EdgeVisitor sum = new Graph.EdgeVisitor() {
+			public void visit(Vertex w, float weight) {
+			    total += weight;
+			}
+		    };
+
+		Object run() {
+		    total = 0.0f;
+		    for (Vertex v : g.getVertices()) {
+			g.forEachEdge(v, sum);
+		    }
+		    return total;
+		}
+	    });
+	benchmarks.add(new Benchmark(name + " BreadthFirstSearch") {
+		Object run() {
+		    return new BreadthFirstSearch(g, source);
+		}
+	    });
+	benchmarks.add(new Benchmark(name + " DepthFirstTraversal") {
+		Object run() {
+		    return DepthFirstTraversal.traverse(g);
+		}
+	    });
+	benchmarks.add(new Benchmark(name + " DepthFirstTraversal.postorder") {
+		Object run() {
+		    return DepthFirstTraversal.postorder(cg);
+		}
+	    });
+	try (offHeap) {
+	    for (Benchmark b : benchmarks) {
+		measure(b);
+	    }
+	}
+	benchmarkCache(name, cg);
+	benchmarkConcurrent(name, cg);
+	benchmarkParallel(name, cg);
+    }
+
+    /**
+     * Reads of a ConcurrentDirectedGraph snapshot, first on their own and
+     * then while another thread adds random edges in batches of
+     * WRITE_BATCH, and the rate at which the writer got its edges in.  The
+     * writer stops once it has doubled the graph so the reads do not slow
+     * down just because there is more to read.
+     */
+    private static void benchmarkConcurrent(String name, CompactDirectedGraph cg) {
+	final int vertexCount = cg.vertexCount();
+	final ConcurrentDirectedGraph g = new ConcurrentDirectedGraph();
+	String[] sources = new String[cg.edgeCount()];
+	String[] destinations = new String[cg.edgeCount()];
+	float[] weights = new float[cg.edgeCount()];
+	for (int e = 0, v = 0; v < vertexCount; v++) {
+	    for (; e < cg.edgeEnd(v); e++) {
+		sources[e] = cg.vertexAt(v).getLabel();
+		destinations[e] = cg.vertexAt(cg.target(e)).getLabel();
+		weights[e] = cg.weight(e);
+	    }
+	}
+	g.addEdges(sources, destinations, weights);
+	final String[] labels = new String[vertexCount];
+	for (int v = 0; v < vertexCount; v++) {
+	    labels[v] = cg.vertexAt(v).getLabel();
+	}
+
+	Benchmark read = new Benchmark(name + " ConcurrentDirectedGraph read") {
+		Random r = new Random(vertexCount);
+
+		Object run() {
+		    ConcurrentDirectedGraph.Snapshot s = g.snapshot();
+		    float total = 0;
+		    for (int i = 0; i < READ_VERTICES; i++) {
+			Vertex v = s.getVertex(labels[r.nextInt(vertexCount)]);
+			for (Vertex w : s.adjacentTo(v)) {
+			    for (Edge e : s.getEdges(v, w)) {
+				total += e.getWeight();
+			    }
+			}
+		    }
+		    return total;
+		}
+	    };
+	measure(read);
+
+	final AtomicBoolean stop = new AtomicBoolean();
+	final AtomicLong written = new AtomicLong();
+	final AtomicLong writeNanos = new AtomicLong();
+	final int maxWritten = cg.edgeCount();
+	Thread writer = new Thread() {
+		public void run() {
+		    Random r = new Random(-vertexCount);
+		    String[] from = new String[WRITE_BATCH];
+		    String[] to = new String[WRITE_BATCH];
+		    float[] weights = new float[WRITE_BATCH];
+		    long startTime = System.nanoTime();
+		    while (!stop.get() && written.get() < maxWritten) {
+			for (int i = 0; i < WRITE_BATCH; i++) {
+			    from[i] = labels[r.nextInt(vertexCount)];
+			    to[i] = labels[r.nextInt(vertexCount)];
+			    weights[i] = 1 + r.nextInt(100);
+			}
+			g.addEdges(from, to, weights);
+			written.addAndGet(WRITE_BATCH);
+		    }
+		    writeNanos.set(System.nanoTime() - startTime);
+		}
+	    };
+	writer.start();
+	read.name = name + " ConcurrentDirectedGraph read + write";
+	measure(read);
+	stop.set(true);
+	try {
+	    writer.join();
+	}
+	catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	System.out.println(String.format("%-48s %12.1f edges/s in batches of %d", name + " ConcurrentDirectedGraph write",
+					 written.get() / (writeNanos.get() / 1e9), WRITE_BATCH));
+    }
+
+    /**
+     * Skewed query traffic through a ShortestPathCache: nine queries in ten
+     * come from a few hot sources and the rest from anywhere.
+     */
+    private static void benchmarkCache(String name, final CompactDirectedGraph cg) {
+	final String[] sources = new String[CACHE_QUERIES];
+	final String target = cg.vertexAt(cg.vertexCount()-1).getLabel();
+	Random r = new Random(cg.vertexCount());
+	for (int i = 0; i < sources.length; i++) {
+	    int s = (r.nextInt(10) < 9 ? r.nextInt(Math.min(CACHE_HOT_SOURCES, cg.vertexCount()))
+		     : r.nextInt(cg.vertexCount()));
+	    sources[i] = cg.vertexAt(s).getLabel();
+	}
+	final ShortestPathCache cache = new ShortestPathCache(cg, 32L * 8 * cg.vertexCount());
+	measure(new Benchmark(name + " ShortestPathCache " + CACHE_QUERIES + " queries") {
+		Object run() {
+		    float total = 0;
+		    for (String s : sources) {
+			total += cache.shortestPaths(s).distanceTo(cg.indexOf(target));
+		    }
+		    return total;
+		}
+	    });
+	System.out.println(name + " ShortestPathCache: " + cache);
+    }
+
+    /**
+     * Shortest paths from the first MULTI_SOURCE_COUNT vertices, and
+     * delta-stepping and direction-optimizing breadth first search from
+     * the first vertex, with 1, 2, 4, ... worker
+     * threads up to the number of processors, to show how the parallel
+     * searches scale.
+     */
+    private static void benchmarkParallel(String name, final CompactDirectedGraph cg) {
+	final int[] sources = new int[Math.min(MULTI_SOURCE_COUNT, cg.vertexCount())];
+	for (int i = 0; i < sources.length; i++) {
+	    sources[i] = i;
+	}
+	int processors = Runtime.getRuntime().availableProcessors();
+	for (int threads = 1; ; threads = Math.min(threads*2, processors)) {
+	    final ForkJoinPool pool = new ForkJoinPool(threads);
+	    measure(new Benchmark(name + " MultiSource " + sources.length + " x " + threads + " threads") {
+		    MultiSourceShortestPaths paths = new MultiSourceShortestPaths(cg, pool);
+
+		    Object run() {
+			final DoubleAdder total = new DoubleAdder();
+			paths.run(sources, new MultiSourceShortestPaths.ResultConsumer() {
+				public void accept(ShortestPathResult result) {
+				    total.add(result.distanceTo(cg.vertexCount()-1));
+				}
+			    });
+			return total.sum();
+		    }
+		});
+	    measure(new Benchmark(name + " DeltaStepping x " + threads + " threads") {
+		    DeltaSteppingShortestPaths paths =
+			new DeltaSteppingShortestPaths(cg, DeltaSteppingShortestPaths.defaultDelta(cg), pool);
+
+		    Object run() {
+			return paths.run(0);
+		    }
+		});
+	    measure(new Benchmark(name + " ParallelBFS x " + threads + " threads") {
+		    ParallelBreadthFirstSearch search =
+			new ParallelBreadthFirstSearch(cg, CompactDirectedGraph.transpose(cg), pool);
+
+		    Object run() {
+			return search.search(0);
+		    }
+		});
+	    pool.shutdown();
+	    if (threads == processors) break;
+	}
+    }
+
+    private static void benchmarkQueues() {
+	final int size = 100000;
+	final Random r = new Random(size);
+	final float[] priorities = new float[size];
+	final Integer[] boxed = new Integer[size];
+	for (int i = 0; i < size; i++) {
+	    priorities[i] = r.nextInt(1000000);
+	    boxed[i] = (int)priorities[i];
+	}
+
+	ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+	benchmarks.add(new Benchmark("PriorityQ offer/poll " + size) {
+		Object run() {
+		    PriorityQ<Integer> q = new PriorityQ<Integer>(size);
+		    for (Integer i : boxed) {
+			q.offer(i);
+		    }
+		    int last = 0;
+		    while (q.size() > 0) {
+			last = q.poll();
+		    }
+		    return last;
+		}
+	    });
+	benchmarks.add(new Benchmark("PriorityQ offer/remove " + size) {
+		Object run() {
+		    PriorityQ<Integer> q = new PriorityQ<Integer>(size);
+		    for (int i = 0; i < size; i++) {
+			q.offer(i);
+		    }
+		    for (int i = 0; i < size; i += 2) {
+			q.remove(i);
+		    }
+		    return q.size();
+		}
+	    });
+	benchmarks.add(new Benchmark("IndexedPriorityQ offer/decreaseKey/poll " + size) {
+		IndexedPriorityQ q;
+
+		void setUp() {
+		    q = new IndexedPriorityQ(size);
+		}
+
+		Object run() {
+		    for (int i = 0; i < size; i++) {
+			q.offer(i, priorities[i]);
+		    }
+		    for (int i = 0; i < size; i += 2) {
+			q.decreaseKey(i, priorities[i] / 2);
+		    }
+		    int last = 0;
+		    while (!q.isEmpty()) {
+			last = q.poll();
+		    }
+		    return last;
+		}
+	    });
+	for (Benchmark b : benchmarks) {
+	    measure(b);
+	}
+    }
+
+    private static void measure(Benchmark b) {
+	b.setUp();
+	long end = System.nanoTime() + warmupMillis * 1000000L;
+	while (System.nanoTime() < end) {
+	    sink = b.run();
+	}
+
+	long[] times = new long[1024];
+	int runs = 0;
+	long[] threads = countedThreads();
+	long[] allocatedBefore = allocatedBytes(threads);
+	long start = System.nanoTime();
+	end = start + measureMillis * 1000000L;
+	long now = start;
+	while (now < end || runs < 5) {
+	    long before = now;
+	    sink = b.run();
+	    now = System.nanoTime();
+	    if (runs == times.length) {
+		times = Arrays.copyOf(times, runs*2);
+	    }
+	    times[runs++] = now - before;
+	}
+	long allocated = allocatedSince(allocatedBefore, allocatedBytes(threads));
+	long total = now - start;
+	Arrays.sort(times, 0, runs);
+
+	System.out.println(String.format("%-48s %12.1f %10.1f %10.1f %10.1f %10.1f %12s",
+					 b.name,
+					 runs / (total / 1e9),
+					 percentile(times, runs, 0.50) / 1e3,
+					 percentile(times, runs, 0.90) / 1e3,
+					 percentile(times, runs, 0.99) / 1e3,
+					 times[runs-1] / 1e3,
+					 (allocatedBefore == null ? "n/a" : Long.toString(allocated / runs))));
+    }
+
+    private static long percentile(long[] sorted, int length, double p) {
+	return sorted[Math.min(length-1, (int)Math.ceil(p * length) - 1)];
+    }
+
+    /**
+     * Ids of the threads whose allocation is charged to a benchmark: the
+     * calling thread and the workers of every fork-join pool.  The workers
+     * are started during warm-up and outlive the measurement; other
+     * threads, such as the concurrent benchmark's writer, are left out.
+     */
+    private static long[] countedThreads() {
+	ArrayList<Long> ids = new ArrayList<Long>();
+	ids.add(Thread.currentThread().getId());
+	for (Thread t : Thread.getAllStackTraces().keySet()) {
+	    if (t instanceof ForkJoinWorkerThread) {
+		ids.add(t.getId());
+	    }
+	}
+	long[] result = new long[ids.size()];
+	for (int i = 0; i < result.length; i++) {
+	    result[i] = ids.get(i);
+	}
+	return result;
+    }
+
+    /**
+     * Bytes allocated so far by each of threads, -1 for one that has
+     * ended, or null if the JVM does not support counting them.
+     */
+    private static long[] allocatedBytes(long[] threads) {
+	ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+	if (bean instanceof com.sun.management.ThreadMXBean) {
+	    com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+	    if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+		return sunBean.getThreadAllocatedBytes(threads);
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Bytes allocated between two readings of allocatedBytes, leaving out
+     * threads that ended in between.
+     */
+    private static long allocatedSince(long[] before, long[] after) {
+	if (before == null) return 0;
+	long total = 0;
+	for (int i = 0; i < before.length; i++) {
+	    if (before[i] >= 0 && after[i] >= 0) {
+		total += after[i] - before[i];
+	    }
+	}
+	return total;
+    }
+
+}
@@ -0,0 +1,206 @@
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Collects edges for a graph and builds it in one go.  Labels are interned
+ * into dense ids by a LabelDictionary as they arrive, each edge is stored
+ * as two ints and a float, so adding an edge allocates nothing once the
+ * arrays are big enough.  Give the expected sizes up front to avoid
+ * growing the arrays at all.
+ *
+ * toGraph and addTo add the edges to an AdjacencyListDirectedGraph in the
+ * order they were added here, so the graph is the one calling addEdge for
+ * each would build.  toCompactGraph groups them by source with two
+ * counting sorts, so the cost is linear in the number of edges; within a
+ * source vertex the edges are ordered by destination id, and parallel
+ * edges keep the order they were added in.
+ */
+public class GraphBuilder {
+
+    private LabelDictionary labels;
+    private int[] sources;
+    private int[] destinations;
+    private float[] weights;
+    private int edgeCount;
+
+    public GraphBuilder() {
+	this(16, 16);
+    }
+
+    /**
+     * @param expectedVertices
+     * @param expectedEdges
+     */
+    public GraphBuilder(int expectedVertices, int expectedEdges) {
+	labels = new LabelDictionary(expectedVertices, expectedVertices * 8);
+	expectedEdges = Math.max(expectedEdges, 16);
+	sources = new int[expectedEdges];
+	destinations = new int[expectedEdges];
+	weights = new float[expectedEdges];
+	edgeCount = 0;
+    }
+
+    public int vertexCount() {
+	return labels.size();
+    }
+
+    public int edgeCount() {
+	return edgeCount;
+    }
+
+    /**
+     * The id of the vertex labelled v, giving it the next id if it is new.
+     * @param v
+     * @return
+     */
+    public int vertex(String v) {
+	return labels.intern(v);
+    }
+
+    /**
+     * The id of the vertex whose label is the UTF-8 in buf[start, end),
+     * giving it the next id if it is new.
+     */
+    int vertex(ByteBuffer buf, int start, int end) {
+	return labels.intern(buf, start, end);
+    }
+
+    /**
+     * The label of vertex id v.
+     * @param v
+     * @return
+     */
+    public String label(int v) {
+	return labels.label(v);
+    }
+
+    /**
+     * Add edge v-w between vertex ids.
+     * @param v
+     * @param w
+     * @param weight
+     */
+    public void addEdge(int v, int w, float weight) {
+	if (edgeCount == sources.length) {
+	    int length = edgeCount * 2;
+	    sources = Arrays.copyOf(sources, length);
+	    destinations = Arrays.copyOf(destinations, length);
+	    weights = Arrays.copyOf(weights, length);
+	}
+	sources[edgeCount] = v;
+	destinations[edgeCount] = w;
+	weights[edgeCount] = weight;
+	edgeCount++;
+    }
+
+    public void addEdge(String v, String w, float weight) {
+	addEdge(vertex(v), vertex(w), weight);
+    }
+
+    /**
+     * Add the edges sources[i]-destinations[i] with weights[i].
+     * @param sources
+     * @param destinations
+     * @param weights
+     */
+    public void addEdges(String[] sources, String[] destinations, float[] weights) {
+	ensureEdgeCapacity(edgeCount + sources.length);
+	for (int i = 0; i < sources.length; i++) {
+	    addEdge(vertex(sources[i]), vertex(destinations[i]), weights[i]);
+	}
+    }
+
+    /**
+     * Add a copy of each edge, by the labels of its end vertices.
+     * @param edges
+     */
+    public void addEdges(Iterable<Edge> edges) {
+	for (Edge e : edges) {
+	    addEdge(vertex(e.getSource().getLabel()),
+		    vertex(e.getDestination().getLabel()), e.getWeight());
+	}
+    }
+
+    /**
+     * Add the edges to an AdjacencyListDirectedGraph in the order they were
+     * added here.  As with addEdge, only vertices at the end of some edge
+     * are added.
+     * @param g
+     */
+    public void addTo(AdjacencyListDirectedGraph g) {
+	g.addEdges(labels.labels(), labels.size(), sources, destinations, weights, edgeCount);
+    }
+
+    /**
+     * Build a new AdjacencyListDirectedGraph from the edges.
+     * @return
+     */
+    public AdjacencyListDirectedGraph toGraph() {
+	AdjacencyListDirectedGraph g = new AdjacencyListDirectedGraph();
+	addTo(g);
+	return g;
+    }
+
+    /**
+     * Build a CompactDirectedGraph from the edges without making an Edge
+     * object for each of them.  Vertex ids are the ids given here, so
+     * vertices are in the order they were first seen, and every vertex
+     * given an id is included whether or not it has edges.  The graph
+     * shares this builder's label dictionary and makes vertex objects only
+     * when they are asked for; vertices added to the builder afterwards
+     * are not part of it.
+     * @return
+     */
+    public CompactDirectedGraph toCompactGraph() {
+	int vertexCount = labels.size();
+	int[] offsets = new int[vertexCount + 1];
+	int[] targets = new int[edgeCount];
+	float[] rowWeights = new float[edgeCount];
+	group(offsets, targets, rowWeights);
+	return new CompactDirectedGraph(labels, new Vertex[vertexCount],
+					offsets, targets, rowWeights, null);
+    }
+
+    /**
+     * Sort the edges into rows by source and, within a row, by target,
+     * keeping parallel edges in the order they were added.  A stable
+     * counting sort by target followed by one by source.
+     */
+    private void group(int[] offsets, int[] targets, float[] rowWeights) {
+	int vertexCount = offsets.length - 1;
+	int[] byTarget = new int[edgeCount];
+	int[] next = new int[vertexCount + 1];
+	for (int e = 0; e < edgeCount; e++) {
+	    next[destinations[e]+1]++;
+	}
+	for (int v = 0; v < vertexCount; v++) {
+	    next[v+1] += next[v];
+	}
+	for (int e = 0; e < edgeCount; e++) {
+	    byTarget[next[destinations[e]]++] = e;
+	}
+
+	for (int e = 0; e < edgeCount; e++) {
+	    offsets[sources[e]+1]++;
+	}
+	for (int v = 0; v < vertexCount; v++) {
+	    offsets[v+1] += offsets[v];
+	}
+	System.arraycopy(offsets, 0, next, 0, vertexCount + 1);
+	for (int i = 0; i < edgeCount; i++) {
+	    int e = byTarget[i];
+	    int position = next[sources[e]]++;
+	    targets[position] = destinations[e];
+	    rowWeights[position] = weights[e];
+	}
+    }
+
+    private void ensureEdgeCapacity(int capacity) {
+	if (capacity > sources.length) {
+	    sources = Arrays.copyOf(sources, capacity);
+	    destinations = Arrays.copyOf(destinations, capacity);
+	    weights = Arrays.copyOf(weights, capacity);
+	}
+    }
+
+}
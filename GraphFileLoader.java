@@ -0,0 +1,482 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reads graphs in the graphPos text format: a line holding the number of
+ * vertex lines that follow, then one line per vertex of the form
+ * "v w1 weight1 w2 weight2 ...".  The file is memory mapped and parsed
+ * straight from the mapped bytes.  Each chunk of the file interns its
+ * labels once as positions in the file, and the builder's label
+ * dictionary copies each distinct label's bytes once, so labels and
+ * integer weights are parsed without making a String.
+ * Large files can be split into line aligned chunks that are parsed on
+ * several threads.  The chunks are handed to a GraphBuilder in file order,
+ * so vertex ids follow the order labels first appear in the file whether
+ * or not it was parsed in parallel.  load has the builder add the edges to
+ * the graph in one batch in file order, so edge names and the order of
+ * incoming edges are the ones reading the file a line at a time gives.
+ * loadCompact freezes them straight into a CompactDirectedGraph, grouped
+ * by source id and then by destination id with parallel edges keeping
+ * their file order.
+ */
+public class GraphFileLoader {
+
+    private static final int MIN_CHUNK_SIZE = 1 << 22;
+    private static final long MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * Load a graph, parsing in parallel if there is more than one processor.
+     * @param file
+     * @return the graph, or null if the file has fewer vertex lines than
+     *         its first line says
+     * @throws IOException
+     */
+    public static AdjacencyListDirectedGraph load(String file) throws IOException {
+	return load(file, Runtime.getRuntime().availableProcessors() > 1);
+    }
+
+    /**
+     * Load a graph.
+     * @param file
+     * @param parallel parse chunks of large files on several threads
+     * @return the graph, or null if the file has fewer vertex lines than
+     *         its first line says
+     * @throws IOException
+     */
+    public static AdjacencyListDirectedGraph load(String file, boolean parallel) throws IOException {
+	GraphBuilder builder = read(file, parallel);
+	return (builder == null ? null : builder.toGraph());
+    }
+
+    /**
+     * Load a graph straight into compact form, parsing in parallel if there
+     * is more than one processor.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static CompactDirectedGraph loadCompact(String file) throws IOException {
+	return loadCompact(file, Runtime.getRuntime().availableProcessors() > 1);
+    }
+
+    /**
+     * Load a graph straight into compact form, without making a vertex,
+     * label String or edge object per vertex or edge.  Vertex ids are in
+     * order of first appearance in the file.
+     * @param file
+     * @param parallel parse chunks of large files on several threads
+     * @return the graph, or null if the file has fewer vertex lines than
+     *         its first line says
+     * @throws IOException
+     */
+    public static CompactDirectedGraph loadCompact(String file, boolean parallel) throws IOException {
+	GraphBuilder builder = read(file, parallel);
+	return (builder == null ? null : builder.toCompactGraph());
+    }
+
+    /**
+     * Parse file into a builder.
+     * @return the builder, or null if the file is empty or has fewer vertex
+     *         lines than its first line says
+     */
+    private static GraphBuilder read(String file, boolean parallel) throws IOException {
+	List<Chunk> chunks = new ArrayList<Chunk>();
+	int vertices;
+	try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+	    long size = channel.size();
+	    if (size == 0) return null;
+	    int threads = (parallel ? Runtime.getRuntime().availableProcessors() : 1);
+	    long pos = 0;
+	    int headerEnd = -1;
+	    MappedByteBuffer first = null;
+	    while (pos < size) {
+		MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(size-pos, MAX_REGION_SIZE));
+		int end = buf.limit();
+		if (pos + end < size) {
+		    while (end > 0 && buf.get(end-1) != '\n') end--;
+		    if (end == 0) throw new IOException("Line longer than " + MAX_REGION_SIZE + " bytes in " + file);
+		}
+		int start = 0;
+		if (first == null) {
+		    first = buf;
+		    while (start < end && buf.get(start) != '\n') start++;
+		    headerEnd = start;
+		    if (start < end) start++;
+		}
+		split(buf, start, end, threads, chunks);
+		pos += end;
+	    }
+	    vertices = parseCount(first, 0, headerEnd);
+	    parse(chunks, threads > 1);
+	}
+
+	long edgeTotal = 0;
+	for (Chunk chunk : chunks) {
+	    edgeTotal += chunk.edgeNo;
+	}
+	GraphBuilder builder = new GraphBuilder(vertices, (int)Math.min(edgeTotal, Integer.MAX_VALUE - 8));
+	int linesLeft = vertices;
+	for (Chunk chunk : chunks) {
+	    if (linesLeft == 0) break;
+	    int lines = Math.min(chunk.lines, linesLeft);
+	    int edges = (lines == 0 ? 0 : chunk.lineEnds[lines-1]);
+	    int[] ids = new int[chunk.labels.size];
+	    Arrays.fill(ids, -1);
+	    for (int e = 0; e < edges; e++) {
+		int v = chunk.sources[e];
+		int w = chunk.destinations[e];
+		if (ids[v] < 0) ids[v] = chunk.labels.intern(builder, v);
+		if (ids[w] < 0) ids[w] = chunk.labels.intern(builder, w);
+		builder.addEdge(ids[v], ids[w], chunk.weights[e]);
+	    }
+	    chunk.labels.buf = null;
+	    linesLeft -= lines;
+	}
+	if (linesLeft > 0) return null;
+	return builder;
+    }
+
+    /**
+     * Receives the edges of a graph, by vertex id, one at a time.
+     */
+    interface EdgeSink {
+
+	void edge(int v, int w, float weight);
+
+    }
+
+    /**
+     * Parse file on the calling thread and hand each edge to sink in file
+     * order, keeping none of them, so the file can hold more edges than
+     * would fit in the heap.  Labels are interned into labels as they are
+     * met, a vertex being given an id when it is first at the end of an
+     * edge, so the ids are the ones loadCompact gives.  Scanning the same
+     * file again with the same dictionary gives the same ids.
+     * @param file
+     * @param labels
+     * @param sink
+     * @return false if the file is empty or has fewer vertex lines than its
+     *         first line says
+     * @throws IOException
+     */
+    static boolean scan(String file, LabelDictionary labels, EdgeSink sink) throws IOException {
+	try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+	    long size = channel.size();
+	    if (size == 0) return false;
+	    long pos = 0;
+	    int linesLeft = -1;
+	    while (pos < size && linesLeft != 0) {
+		MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(size-pos, MAX_REGION_SIZE));
+		int end = buf.limit();
+		if (pos + end < size) {
+		    while (end > 0 && buf.get(end-1) != '\n') end--;
+		    if (end == 0) throw new IOException("Line longer than " + MAX_REGION_SIZE + " bytes in " + file);
+		}
+		int p = 0;
+		if (linesLeft < 0) {
+		    while (p < end && buf.get(p) != '\n') p++;
+		    linesLeft = parseCount(buf, 0, p);
+		    if (p < end) p++;
+		}
+		while (p < end && linesLeft > 0) {
+		    p = scanLine(buf, p, end, labels, sink);
+		    linesLeft--;
+		}
+		pos += end;
+	    }
+	    return linesLeft == 0;
+	}
+    }
+
+    /**
+     * Hand the edges of the line starting at p to sink.
+     * @return the start of the next line
+     */
+    private static int scanLine(MappedByteBuffer buf, int p, int end, LabelDictionary labels, EdgeSink sink) {
+	int token = 0;
+	int sourceStart = p;
+	int sourceEnd = p;
+	int destinationStart = p;
+	int destinationEnd = p;
+	int source = -1;
+	while (p < end && buf.get(p) != '\n') {
+	    if (isSpace(buf.get(p))) {
+		p++;
+		continue;
+	    }
+	    int tokenStart = p;
+	    while (p < end && buf.get(p) != '\n' && !isSpace(buf.get(p))) p++;
+	    if (token == 0) {
+		sourceStart = tokenStart;
+		sourceEnd = p;
+	    }
+	    else if (token % 2 == 1) {
+		destinationStart = tokenStart;
+		destinationEnd = p;
+	    }
+	    else {
+		if (source < 0) source = labels.intern(buf, sourceStart, sourceEnd);
+		int destination = labels.intern(buf, destinationStart, destinationEnd);
+		sink.edge(source, destination, parseWeight(buf, tokenStart, p));
+	    }
+	    token++;
+	}
+	return (p < end ? p + 1 : p);
+    }
+
+    /**
+     * Cut buf[start, end) into roughly equal line aligned chunks.
+     */
+    private static void split(MappedByteBuffer buf, int start, int end, int threads, List<Chunk> chunks) {
+	int pieces = Math.max(1, Math.min(threads, (end-start) / MIN_CHUNK_SIZE));
+	int pieceSize = (end-start) / pieces;
+	for (int i = 0; i < pieces && start < end; i++) {
+	    int pieceEnd = (i == pieces-1 ? end : start + pieceSize);
+	    while (pieceEnd < end && buf.get(pieceEnd-1) != '\n') pieceEnd++;
+	    chunks.add(new Chunk(buf, start, pieceEnd));
+	    start = pieceEnd;
+	}
+    }
+
+    private static void parse(List<Chunk> chunks, boolean parallel) throws IOException {
+	if (!parallel || chunks.size() < 2) {
+	    for (Chunk chunk : chunks) {
+		chunk.call();
+	    }
+	    return;
+	}
+	try {
+	    for (Future<Void> f : ForkJoinPool.commonPool().invokeAll(chunks)) {
+		f.get();
+	    }
+	}
+	catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("Interrupted while parsing", e);
+	}
+	catch (ExecutionException e) {
+	    if (e.getCause() instanceof RuntimeException) {
+		throw (RuntimeException)e.getCause();
+	    }
+	    throw new IOException(e.getCause());
+	}
+    }
+
+    private static boolean isSpace(byte b) {
+	return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    private static int parseCount(MappedByteBuffer buf, int start, int end) {
+	while (start < end && isSpace(buf.get(start))) start++;
+	while (end > start && isSpace(buf.get(end-1))) end--;
+	return Integer.parseInt(text(buf, start, end));
+    }
+
+    /**
+     * Parse a weight.  Plain integers are converted directly, which gives
+     * the same float as Float.parseFloat; anything else goes through it.
+     */
+    private static float parseWeight(MappedByteBuffer buf, int start, int end) {
+	int i = start;
+	boolean negative = false;
+	if (i < end && (buf.get(i) == '-' || buf.get(i) == '+')) {
+	    negative = buf.get(i) == '-';
+	    i++;
+	}
+	if (i == end || end - i > 18) {
+	    return Float.parseFloat(text(buf, start, end));
+	}
+	long value = 0;
+	for (; i < end; i++) {
+	    int digit = buf.get(i) - '0';
+	    if (digit < 0 || digit > 9) {
+		return Float.parseFloat(text(buf, start, end));
+	    }
+	    value = value*10 + digit;
+	}
+	return (negative ? -(float)value : (float)value);
+    }
+
+    private static String text(MappedByteBuffer buf, int start, int end) {
+	byte[] bytes = new byte[end-start];
+	for (int i = 0; i < bytes.length; i++) {
+	    bytes[i] = buf.get(start+i);
+	}
+	return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A line aligned range of the file and the edges parsed from it.  Edge
+     * endpoints are ids into the chunk's own label table.
+     */
+    private static class Chunk implements Callable<Void> {
+
+	private MappedByteBuffer buf;
+	private int start;
+	private int end;
+	private LabelTable labels;
+	private int[] sources;
+	private int[] destinations;
+	private float[] weights;
+	private int edgeNo;
+	private int[] lineEnds;
+	private int lines;
+
+	public Chunk(MappedByteBuffer buf, int start, int end) {
+	    this.buf = buf;
+	    this.start = start;
+	    this.end = end;
+	}
+
+	public Void call() {
+	    labels = new LabelTable(buf);
+	    int capacity = Math.max(16, (end-start) / 8);
+	    sources = new int[capacity];
+	    destinations = new int[capacity];
+	    weights = new float[capacity];
+	    lineEnds = new int[Math.max(16, (end-start) / 64)];
+	    edgeNo = 0;
+	    lines = 0;
+
+	    int p = start;
+	    while (p < end) {
+		int token = 0;
+		int source = -1;
+		int destination = -1;
+		while (p < end && buf.get(p) != '\n') {
+		    if (isSpace(buf.get(p))) {
+			p++;
+			continue;
+		    }
+		    int tokenStart = p;
+		    while (p < end && buf.get(p) != '\n' && !isSpace(buf.get(p))) p++;
+		    if (token == 0) {
+			source = labels.intern(tokenStart, p);
+		    }
+		    else if (token % 2 == 1) {
+			destination = labels.intern(tokenStart, p);
+		    }
+		    else {
+			addEdge(source, destination, parseWeight(buf, tokenStart, p));
+		    }
+		    token++;
+		}
+		if (lines == lineEnds.length) {
+		    lineEnds = Arrays.copyOf(lineEnds, lines*2);
+		}
+		lineEnds[lines++] = edgeNo;
+		if (p < end) p++;
+	    }
+	    buf = null;
+	    return null;
+	}
+
+	private void addEdge(int source, int destination, float weight) {
+	    if (edgeNo == sources.length) {
+		sources = Arrays.copyOf(sources, edgeNo*2);
+		destinations = Arrays.copyOf(destinations, edgeNo*2);
+		weights = Arrays.copyOf(weights, edgeNo*2);
+	    }
+	    sources[edgeNo] = source;
+	    destinations[edgeNo] = destination;
+	    weights[edgeNo] = weight;
+	    edgeNo++;
+	}
+    }
+
+    /**
+     * Open addressing table from label bytes in the mapped file to a small
+     * id and the position of the label's first occurrence.  Labels are
+     * compared against the bytes of their first occurrence, so looking up
+     * a known label allocates nothing.
+     */
+    private static class LabelTable {
+
+	private MappedByteBuffer buf;
+	private int[] slots;
+	private int[] hashes;
+	private int[] starts;
+	private int[] lengths;
+	private int size;
+
+	public LabelTable(MappedByteBuffer buf) {
+	    this.buf = buf;
+	    slots = new int[64];
+	    hashes = new int[32];
+	    starts = new int[32];
+	    lengths = new int[32];
+	    size = 0;
+	}
+
+	/**
+	 * The builder's id for label id.
+	 */
+	public int intern(GraphBuilder builder, int id) {
+	    return builder.vertex(buf, starts[id], starts[id] + lengths[id]);
+	}
+
+	public int intern(int start, int end) {
+	    int hash = 0;
+	    for (int i = start; i < end; i++) {
+		hash = 31*hash + buf.get(i);
+	    }
+	    int mask = slots.length - 1;
+	    for (int slot = mix(hash) & mask;; slot = (slot+1) & mask) {
+		int id = slots[slot] - 1;
+		if (id < 0) {
+		    return add(slot, hash, start, end);
+		}
+		if (hashes[id] == hash && sameBytes(id, start, end)) {
+		    return id;
+		}
+	    }
+	}
+
+	private boolean sameBytes(int id, int start, int end) {
+	    if (lengths[id] != end-start) return false;
+	    for (int i = 0, s = starts[id]; i < lengths[id]; i++) {
+		if (buf.get(s+i) != buf.get(start+i)) return false;
+	    }
+	    return true;
+	}
+
+	private int add(int slot, int hash, int start, int end) {
+	    if (size == hashes.length) {
+		hashes = Arrays.copyOf(hashes, size*2);
+		starts = Arrays.copyOf(starts, size*2);
+		lengths = Arrays.copyOf(lengths, size*2);
+	    }
+	    int id = size++;
+	    hashes[id] = hash;
+	    starts[id] = start;
+	    lengths[id] = end-start;
+	    slots[slot] = id + 1;
+	    if (size*2 > slots.length) {
+		rehash();
+	    }
+	    return id;
+	}
+
+	private void rehash() {
+	    slots = new int[slots.length*2];
+	    int mask = slots.length - 1;
+	    for (int id = 0; id < size; id++) {
+		int slot = mix(hashes[id]) & mask;
+		while (slots[slot] != 0) slot = (slot+1) & mask;
+		slots[slot] = id + 1;
+	    }
+	}
+
+	private static int mix(int hash) {
+	    hash *= 0x9E3779B9;
+	    return hash ^ (hash >>> 16);
+	}
+    }
+
+}
@@ -0,0 +1,370 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Seeded generators of synthetic graphs for scale testing.  Vertices are
+ * numbered 0 to vertexCount()-1 and labelled "1" to "n" like the bundled
+ * graphPos files.  Edges are produced vertex by vertex in label order and
+ * handed straight to an EdgeSink, so a graph can be written out as a
+ * graphPos text file or added to a Graph without the edge list ever being
+ * held in memory; generators only keep one out-degree count per vertex.
+ * The same seed always produces the same graph.
+ */
+public abstract class GraphGenerator {
+
+    /**
+     * Receives the edges of a generated graph, grouped by source vertex.
+     */
+    public interface EdgeSink {
+
+	void startVertex(int v) throws IOException;
+
+	void edge(int v, int w, float weight) throws IOException;
+
+	void endVertex(int v) throws IOException;
+
+    }
+
+    private static final int DEFAULT_MAX_WEIGHT = 100;
+    private static final int DEFAULT_DEGREE = 8;
+
+    protected int vertexCount;
+    protected long seed;
+    protected int maxWeight;
+
+    protected GraphGenerator(int vertexCount, long seed) {
+	this.vertexCount = vertexCount;
+	this.seed = seed;
+	this.maxWeight = DEFAULT_MAX_WEIGHT;
+    }
+
+    /**
+     * Produce the edges of the graph.
+     * @param r the random source, seeded from the generator's seed
+     * @param sink
+     * @throws IOException if the sink does
+     */
+    protected abstract void generate(SplittableRandom r, EdgeSink sink) throws IOException;
+
+    public int vertexCount() {
+	return vertexCount;
+    }
+
+    /**
+     * Weights are whole numbers drawn uniformly from 1 to maxWeight.
+     * @param maxWeight
+     * @return this generator
+     */
+    public GraphGenerator withMaxWeight(int maxWeight) {
+	this.maxWeight = maxWeight;
+	return this;
+    }
+
+    protected float weight(SplittableRandom r) {
+	return 1 + r.nextInt(maxWeight);
+    }
+
+    public static String label(int v) {
+	return Integer.toString(v + 1);
+    }
+
+    /**
+     * Stream the graph to sink.
+     * @param sink
+     * @return the number of edges generated
+     * @throws IOException if the sink does
+     */
+    public long generate(final EdgeSink sink) throws IOException {
+	final long[] edges = new long[1];
+	generate(new SplittableRandom(seed), new EdgeSink() {
+		public void startVertex(int v) throws IOException {
+		    sink.startVertex(v);
+		}
+
+		public void edge(int v, int w, float weight) throws IOException {
+		    edges[0]++;
+		    sink.edge(v, w, weight);
+		}
+
+		public void endVertex(int v) throws IOException {
+		    sink.endVertex(v);
+		}
+	    });
+	return edges[0];
+    }
+
+    /**
+     * Add the generated edges to g.
+     * @param g
+     * @return the number of edges generated
+     */
+    public long addTo(final Graph g) {
+	final String[] labels = new String[vertexCount];
+	try {
+	    return generate(new EdgeSink() {
+		    public void startVertex(int v) {
+		    }
+
+		    public void edge(int v, int w, float weight) {
+			if (labels[v] == null) labels[v] = label(v);
+			if (labels[w] == null) labels[w] = label(w);
+			g.addEdge(labels[v], labels[w], weight);
+		    }
+
+		    public void endVertex(int v) {
+		    }
+		});
+	}
+	catch (IOException e) {
+	    throw new UncheckedIOException(e);
+	}
+    }
+
+    /**
+     * Generate into a new AdjacencyListDirectedGraph, adding each edge as
+     * it is generated so the edge list is never held apart from the graph.
+     * @return
+     */
+    public AdjacencyListDirectedGraph toGraph() {
+	AdjacencyListDirectedGraph g = new AdjacencyListDirectedGraph();
+	addTo(g);
+	return g;
+    }
+
+    /**
+     * Write the graph to file in the graphPos text format.
+     * @param file
+     * @return the number of edges generated
+     * @throws IOException
+     */
+    public long writeText(String file) throws IOException {
+	try (final Writer out = new BufferedWriter(new FileWriter(file), 1 << 20)) {
+	    out.write(Integer.toString(vertexCount));
+	    out.write('\n');
+	    return generate(new EdgeSink() {
+		    public void startVertex(int v) throws IOException {
+			out.write(label(v));
+		    }
+
+		    public void edge(int v, int w, float weight) throws IOException {
+			out.write(' ');
+			out.write(label(w));
+			out.write(' ');
+			out.write(weight == (int)weight ? Integer.toString((int)weight) : Float.toString(weight));
+		    }
+
+		    public void endVertex(int v) throws IOException {
+			out.write('\n');
+		    }
+		});
+	}
+    }
+
+    /**
+     * Spread edgeCount edges over the given number of sources, one random
+     * draw per edge, so out-degrees follow the same multinomial as picking
+     * each edge's source independently.
+     */
+    private static int[] uniformDegrees(SplittableRandom r, int sources, int vertexCount, long edgeCount) {
+	int[] degree = new int[vertexCount];
+	for (long i = 0; i < edgeCount; i++) {
+	    degree[r.nextInt(sources)]++;
+	}
+	return degree;
+    }
+
+    /**
+     * Uniform random graph with edgeCount edges (Erdos-Renyi G(n, m)).  Each
+     * edge joins a uniformly chosen source to a different uniformly chosen
+     * target; parallel edges may occur.
+     * @param vertexCount
+     * @param edgeCount
+     * @param seed
+     * @return
+     */
+    public static GraphGenerator erdosRenyi(int vertexCount, final long edgeCount, long seed) {
+	return new GraphGenerator(vertexCount, seed) {
+	    protected void generate(SplittableRandom r, EdgeSink sink) throws IOException {
+		int n = this.vertexCount;
+		int[] degree = (n < 2 ? new int[n] : uniformDegrees(r, n, n, edgeCount));
+		for (int v = 0; v < n; v++) {
+		    sink.startVertex(v);
+		    for (int i = 0; i < degree[v]; i++) {
+			int w = r.nextInt(n-1);
+			if (w >= v) w++;
+			sink.edge(v, w, weight(r));
+		    }
+		    sink.endVertex(v);
+		}
+	    }
+	};
+    }
+
+    /**
+     * Recursive matrix (R-MAT) power-law graph on 2^scale vertices with
+     * edgeFactor edges per vertex.  Each edge picks a quadrant of the
+     * adjacency matrix with probabilities a, b, c and 1-a-b-c at every
+     * level.  The source half is drawn first from the row marginals and the
+     * target half then from the quadrant probabilities conditioned on it,
+     * which gives the same distribution while emitting edges by source.
+     * @param scale
+     * @param edgeFactor
+     * @param a
+     * @param b
+     * @param c
+     * @param seed
+     * @return
+     */
+    public static GraphGenerator rmat(final int scale, final int edgeFactor,
+				      final double a, final double b, final double c, long seed) {
+	return new GraphGenerator(1 << scale, seed) {
+	    protected void generate(SplittableRandom r, EdgeSink sink) throws IOException {
+		int n = this.vertexCount;
+		double top = a + b;
+		double leftOfTop = a / (a + b);
+		double leftOfBottom = c / (1 - a - b);
+		int[] degree = new int[n];
+		for (long i = (long)edgeFactor * n; i > 0; i--) {
+		    int v = 0;
+		    for (int bit = n >>> 1; bit > 0; bit >>>= 1) {
+			if (r.nextDouble() >= top) v |= bit;
+		    }
+		    degree[v]++;
+		}
+		for (int v = 0; v < n; v++) {
+		    sink.startVertex(v);
+		    for (int i = 0; i < degree[v]; i++) {
+			int w = 0;
+			for (int bit = n >>> 1; bit > 0; bit >>>= 1) {
+			    double left = ((v & bit) == 0 ? leftOfTop : leftOfBottom);
+			    if (r.nextDouble() >= left) w |= bit;
+			}
+			sink.edge(v, w, weight(r));
+		    }
+		    sink.endVertex(v);
+		}
+	    }
+	};
+    }
+
+    /**
+     * R-MAT with the Graph500 quadrant probabilities 0.57, 0.19, 0.19.
+     * @param scale
+     * @param edgeFactor
+     * @param seed
+     * @return
+     */
+    public static GraphGenerator rmat(int scale, int edgeFactor, long seed) {
+	return rmat(scale, edgeFactor, 0.57, 0.19, 0.19, seed);
+    }
+
+    /**
+     * Road-like grid of rows x cols vertices where every vertex has an edge
+     * to each of its horizontal and vertical neighbours.
+     * @param rows
+     * @param cols
+     * @param seed
+     * @return
+     */
+    public static GraphGenerator grid(final int rows, final int cols, long seed) {
+	return new GraphGenerator(rows * cols, seed) {
+	    protected void generate(SplittableRandom r, EdgeSink sink) throws IOException {
+		for (int row = 0; row < rows; row++) {
+		    for (int col = 0; col < cols; col++) {
+			int v = row*cols + col;
+			sink.startVertex(v);
+			if (row > 0) sink.edge(v, v - cols, weight(r));
+			if (col > 0) sink.edge(v, v - 1, weight(r));
+			if (col < cols-1) sink.edge(v, v + 1, weight(r));
+			if (row < rows-1) sink.edge(v, v + cols, weight(r));
+			sink.endVertex(v);
+		    }
+		}
+	    }
+	};
+    }
+
+    /**
+     * Random directed acyclic graph with edgeCount edges.  Every edge goes
+     * from a vertex to one with a higher id, so label order is a
+     * topological order.
+     * @param vertexCount
+     * @param edgeCount
+     * @param seed
+     * @return
+     */
+    public static GraphGenerator dag(int vertexCount, final long edgeCount, long seed) {
+	return new GraphGenerator(vertexCount, seed) {
+	    protected void generate(SplittableRandom r, EdgeSink sink) throws IOException {
+		int n = this.vertexCount;
+		int[] degree = (n < 2 ? new int[n] : uniformDegrees(r, n-1, n, edgeCount));
+		for (int v = 0; v < n; v++) {
+		    sink.startVertex(v);
+		    for (int i = 0; i < degree[v]; i++) {
+			sink.edge(v, v + 1 + r.nextInt(n-1-v), weight(r));
+		    }
+		    sink.endVertex(v);
+		}
+	    }
+	};
+    }
+
+    /**
+     * A generator of roughly vertexCount vertices by name: "random",
+     * "rmat", "grid" or "dag".
+     * @param type
+     * @param vertexCount
+     * @param seed
+     * @return the generator, or null for an unknown type
+     */
+    public static GraphGenerator byName(String type, int vertexCount, long seed) {
+	switch (type) {
+	case "random":
+	    return erdosRenyi(vertexCount, (long)DEFAULT_DEGREE * vertexCount, seed);
+	case "rmat":
+	    int scale = 1;
+	    while ((1 << scale) < vertexCount) scale++;
+	    return rmat(scale, DEFAULT_DEGREE, seed);
+	case "grid":
+	    int side = (int)Math.ceil(Math.sqrt(vertexCount));
+	    return grid(side, side, seed);
+	case "dag":
+	    return dag(vertexCount, (long)DEFAULT_DEGREE/2 * vertexCount, seed);
+	}
+	return null;
+    }
+
+    /**
+     * usage: java GraphGenerator type vertices file [seed]
+     * Writes a graphPos text file and reports generation throughput.
+     */
+    public static void main(String[] args) throws IOException {
+	if (args.length < 3) {
+	    System.out.println("usage: java GraphGenerator type vertices file [seed]\n\ttype: random, rmat, grid or dag");
+	    System.exit(0);
+	}
+	long seed = (args.length > 3 ? Long.parseLong(args[3]) : 1);
+	GraphGenerator generator = byName(args[0], Integer.parseInt(args[1]), seed);
+	if (generator == null) {
+	    System.out.println("Unknown graph type " + args[0]);
+	    System.exit(0);
+	}
+	long startTime = System.nanoTime();
+	long edges = generator.writeText(args[2]);
+	long endTime = System.nanoTime();
+	System.out.println(report(generator, edges, endTime - startTime));
+    }
+
+    /**
+     * One line summary of a generation run.
+     * @param generator
+     * @param edges
+     * @param nanos
+     * @return
+     */
+    public static String report(GraphGenerator generator, long edges, long nanos) {
+	return "Generated " + generator.vertexCount() + " vertices and " + edges + " edges in "
+	    + (nanos/1000000.0) + " ms (" + (long)(edges / (nanos/1e9)) + " edges/s)";
+    }
+
+}
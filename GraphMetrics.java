@@ -0,0 +1,435 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * Counters and timers for the graph algorithms.  They are off unless
+ * switched on with setEnabled or -Dgraph.metrics=true.  The algorithms keep
+ * their counts in locals and in their heaps as they go, which costs next to
+ * nothing, and look at the switch once per query: only when it is on do
+ * they read the clock and add the query's counts to the totals here.
+ * The parallel searches, delta stepping and the parallel breadth first
+ * search, only report their time and the vertices they reach.
+ *
+ * Each algorithm's totals are an MXBean, registered by registerMBeans as
+ * graph:type=Algorithm,name=<name>.  snapshot gives a copy of all of them,
+ * and lastQuery the counts of the most recent query of one algorithm.
+ */
+public class GraphMetrics {
+
+    private static volatile boolean enabled = Boolean.getBoolean("graph.metrics");
+    private static final Map<String, Algorithm> algorithms = new LinkedHashMap<String, Algorithm>();
+
+    public static final Algorithm DIJKSTRA = register("Dijkstra");
+    public static final Algorithm POINT_TO_POINT = register("PointToPoint");
+    public static final Algorithm BIDIRECTIONAL = register("Bidirectional");
+    public static final Algorithm ASTAR = register("AStar");
+    public static final Algorithm DELTA_STEPPING = register("DeltaStepping");
+    public static final Algorithm BFS = register("BreadthFirstSearch");
+    public static final Algorithm PARALLEL_BFS = register("ParallelBreadthFirstSearch");
+    public static final Algorithm DFS = register("DepthFirstSearch");
+    public static final Algorithm LEGACY_PRIORITY_QUEUE = register("LegacyPriorityQueue");
+    public static final Algorithm LEGACY_LIST = register("LegacyList");
+
+    static {
+	if (enabled) {
+	    publish();
+	}
+    }
+
+    private static Algorithm register(String name) {
+	Algorithm algorithm = new Algorithm(name);
+	algorithms.put(name, algorithm);
+	return algorithm;
+    }
+
+    public static boolean isEnabled() {
+	return enabled;
+    }
+
+    /**
+     * Switch metrics on or off.  Switching them on also registers the
+     * MBeans.
+     * @param on
+     */
+    public static void setEnabled(boolean on) {
+	enabled = on;
+	if (on) {
+	    publish();
+	}
+    }
+
+    /**
+     * Every algorithm, in a fixed order.
+     * @return
+     */
+    public static List<Algorithm> algorithms() {
+	return new ArrayList<Algorithm>(algorithms.values());
+    }
+
+    /**
+     * The totals of every algorithm, in a fixed order.
+     * @return
+     */
+    public static List<Counts> snapshot() {
+	ArrayList<Counts> result = new ArrayList<Counts>();
+	for (Algorithm algorithm : algorithms.values()) {
+	    result.add(algorithm.totals());
+	}
+	return result;
+    }
+
+    /**
+     * Zero every algorithm's totals.
+     */
+    public static void reset() {
+	for (Algorithm algorithm : algorithms.values()) {
+	    algorithm.reset();
+	}
+    }
+
+    /**
+     * Register each algorithm's MXBean with the platform MBean server.
+     * Algorithms already registered are skipped.
+     * @throws JMException
+     */
+    public static synchronized void registerMBeans() throws JMException {
+	MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	for (Algorithm algorithm : algorithms.values()) {
+	    ObjectName name = objectName(algorithm);
+	    if (!server.isRegistered(name)) {
+		server.registerMBean(algorithm, name);
+	    }
+	}
+    }
+
+    /**
+     * The name algorithm's MXBean is registered under.
+     * @param algorithm
+     * @return
+     * @throws MalformedObjectNameException
+     */
+    public static ObjectName objectName(Algorithm algorithm) throws MalformedObjectNameException {
+	return new ObjectName("graph:type=Algorithm,name=" + algorithm.getName());
+    }
+
+    /**
+     * true if algorithm's MXBean is registered with the platform MBean
+     * server.
+     * @param algorithm
+     * @return
+     */
+    public static boolean isRegistered(Algorithm algorithm) {
+	try {
+	    return ManagementFactory.getPlatformMBeanServer().isRegistered(objectName(algorithm));
+	}
+	catch (MalformedObjectNameException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * registerMBeans for when metrics are switched on.  If the platform
+     * server will not take them the counts are still kept, just not
+     * published.
+     */
+    private static void publish() {
+	try {
+	    registerMBeans();
+	}
+	catch (JMException | SecurityException e) {
+	    // metrics without JMX
+	}
+    }
+
+    /**
+     * The JMX view of one algorithm's totals.
+     */
+    public interface AlgorithmMXBean {
+
+	String getName();
+
+	long getQueries();
+
+	long getTotalNanos();
+
+	long getMaxNanos();
+
+	long getSettled();
+
+	long getEdgesScanned();
+
+	long getRelaxations();
+
+	long getHeapOffers();
+
+	long getHeapDecreases();
+
+	long getHeapPolls();
+
+	void reset();
+    }
+
+    /**
+     * Counts for one query or the totals of many.  Relaxations are the
+     * edges that improved a distance, counted by each search where it
+     * lowers the distance; for the heap based searches that is one fewer
+     * than the offers and decreases per source, whose first offer improves
+     * no edge.
+     */
+    public static class Counts {
+
+	private String name;
+	private long queries;
+	private long nanos;
+	private long maxNanos;
+	private long settled;
+	private long edgesScanned;
+	private long relaxations;
+	private long heapOffers;
+	private long heapDecreases;
+	private long heapPolls;
+
+	Counts(String name, long queries, long nanos, long maxNanos, long settled, long edgesScanned,
+	       long relaxations, long heapOffers, long heapDecreases, long heapPolls) {
+	    this.name = name;
+	    this.queries = queries;
+	    this.nanos = nanos;
+	    this.maxNanos = maxNanos;
+	    this.settled = settled;
+	    this.edgesScanned = edgesScanned;
+	    this.relaxations = relaxations;
+	    this.heapOffers = heapOffers;
+	    this.heapDecreases = heapDecreases;
+	    this.heapPolls = heapPolls;
+	}
+
+	public String getName() {
+	    return name;
+	}
+
+	public long getQueries() {
+	    return queries;
+	}
+
+	public long getTotalNanos() {
+	    return nanos;
+	}
+
+	public long getMaxNanos() {
+	    return maxNanos;
+	}
+
+	public long getSettled() {
+	    return settled;
+	}
+
+	public long getEdgesScanned() {
+	    return edgesScanned;
+	}
+
+	public long getRelaxations() {
+	    return relaxations;
+	}
+
+	public long getHeapOffers() {
+	    return heapOffers;
+	}
+
+	public long getHeapDecreases() {
+	    return heapDecreases;
+	}
+
+	public long getHeapPolls() {
+	    return heapPolls;
+	}
+
+	@Override
+	public String toString() {
+	    return name + ": " + queries + (queries == 1 ? " query" : " queries") + " in " + (nanos / 1000000.0) + " ms"
+		+ ", settled " + settled + ", edges scanned " + edgesScanned + ", relaxations " + relaxations
+		+ ", heap offers " + heapOffers + ", decreases " + heapDecreases + ", polls " + heapPolls;
+	}
+    }
+
+    /**
+     * The running totals of one algorithm.  Queries on several threads may
+     * add to them at once.
+     */
+    public static class Algorithm implements AlgorithmMXBean {
+
+	private String name;
+	private LongAdder queries = new LongAdder();
+	private LongAdder nanos = new LongAdder();
+	private LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+	private LongAdder settled = new LongAdder();
+	private LongAdder edgesScanned = new LongAdder();
+	private LongAdder relaxations = new LongAdder();
+	private LongAdder heapOffers = new LongAdder();
+	private LongAdder heapDecreases = new LongAdder();
+	private LongAdder heapPolls = new LongAdder();
+	private volatile Counts last;
+
+	Algorithm(String name) {
+	    this.name = name;
+	}
+
+	/**
+	 * Start timing a query.
+	 * @return the query, or null if metrics are off
+	 */
+	public Query start() {
+	    return (enabled ? new Query(this, null, null) : null);
+	}
+
+	/**
+	 * Start timing a query whose heap operations are counted by heap.
+	 * @return the query, or null if metrics are off
+	 */
+	public Query start(IndexedPriorityQ heap) {
+	    return (enabled ? new Query(this, heap, null) : null);
+	}
+
+	/**
+	 * Start timing a query that uses two heaps.
+	 * @return the query, or null if metrics are off
+	 */
+	public Query start(IndexedPriorityQ heap, IndexedPriorityQ other) {
+	    return (enabled ? new Query(this, heap, other) : null);
+	}
+
+	/**
+	 * The counts of the most recent query.
+	 * @return the counts, or null if there has not been one
+	 */
+	public Counts lastQuery() {
+	    return last;
+	}
+
+	public Counts totals() {
+	    return new Counts(name, getQueries(), getTotalNanos(), getMaxNanos(), getSettled(), getEdgesScanned(),
+			      getRelaxations(), getHeapOffers(), getHeapDecreases(), getHeapPolls());
+	}
+
+	void add(Counts query) {
+	    queries.increment();
+	    nanos.add(query.nanos);
+	    maxNanos.accumulate(query.nanos);
+	    settled.add(query.settled);
+	    edgesScanned.add(query.edgesScanned);
+	    relaxations.add(query.relaxations);
+	    heapOffers.add(query.heapOffers);
+	    heapDecreases.add(query.heapDecreases);
+	    heapPolls.add(query.heapPolls);
+	    last = query;
+	}
+
+	public String getName() {
+	    return name;
+	}
+
+	public long getQueries() {
+	    return queries.sum();
+	}
+
+	public long getTotalNanos() {
+	    return nanos.sum();
+	}
+
+	public long getMaxNanos() {
+	    return maxNanos.get();
+	}
+
+	public long getSettled() {
+	    return settled.sum();
+	}
+
+	public long getEdgesScanned() {
+	    return edgesScanned.sum();
+	}
+
+	public long getRelaxations() {
+	    return relaxations.sum();
+	}
+
+	public long getHeapOffers() {
+	    return heapOffers.sum();
+	}
+
+	public long getHeapDecreases() {
+	    return heapDecreases.sum();
+	}
+
+	public long getHeapPolls() {
+	    return heapPolls.sum();
+	}
+
+	public void reset() {
+	    queries.reset();
+	    nanos.reset();
+	    maxNanos.reset();
+	    settled.reset();
+	    edgesScanned.reset();
+	    relaxations.reset();
+	    heapOffers.reset();
+	    heapDecreases.reset();
+	    heapPolls.reset();
+	    last = null;
+	}
+    }
+
+    /**
+     * One query being timed.  The heaps' counters are read when it starts
+     * and again when it stops, so a heap reused across queries only
+     * contributes what this query did.
+     */
+    public static class Query {
+
+	private Algorithm algorithm;
+	private IndexedPriorityQ heap;
+	private IndexedPriorityQ other;
+	private long startTime;
+	private long offers;
+	private long decreases;
+	private long polls;
+
+	Query(Algorithm algorithm, IndexedPriorityQ heap, IndexedPriorityQ other) {
+	    this.algorithm = algorithm;
+	    this.heap = heap;
+	    this.other = other;
+	    offers = -offers(heap) - offers(other);
+	    decreases = -decreases(heap) - decreases(other);
+	    polls = -polls(heap) - polls(other);
+	    startTime = System.nanoTime();
+	}
+
+	/**
+	 * Stop the query and add it to its algorithm's totals.
+	 * @param settled vertices settled or visited
+	 * @param edgesScanned edges looked at
+	 * @param relaxations edges that improved a distance
+	 */
+	public void stop(long settled, long edgesScanned, long relaxations) {
+	    long nanos = System.nanoTime() - startTime;
+	    offers += offers(heap) + offers(other);
+	    decreases += decreases(heap) + decreases(other);
+	    polls += polls(heap) + polls(other);
+	    algorithm.add(new Counts(algorithm.name, 1, nanos, nanos, settled, edgesScanned, relaxations,
+				     offers, decreases, polls));
+	}
+
+	private static long offers(IndexedPriorityQ q) {
+	    return (q == null ? 0 : q.getOfferCount());
+	}
+
+	private static long decreases(IndexedPriorityQ q) {
+	    return (q == null ? 0 : q.getDecreaseCount());
+	}
+
+	private static long polls(IndexedPriorityQ q) {
+	    return (q == null ? 0 : q.getPollCount());
+	}
+    }
+
+}
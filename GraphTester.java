@@ -2,8 +2,8 @@
  * To change this template, choose Tools | Templates
  * and open the template in the editor.
  */
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -20,26 +20,53 @@ public class GraphTester {
     public static void main(String[] args) {
 	String file = null;
 	boolean timing = false;
-	boolean usePriorityQueue = true;
+	String dataStructure = "pq";
+	List<String> options = new ArrayList<String>(Arrays.asList(args));
+	boolean metrics = options.remove("-metrics");
+	boolean offHeap = options.remove("-offheap");
+	if (metrics) {
+	    GraphMetrics.setEnabled(true);
+	}
+	args = options.toArray(new String[0]);
 	if (args.length > 0) { file = args[0]; }
-	else {
-	    System.out.println("usage: java GraphTester file [dataStructure]\n\tdataStructure: pq for priority queue or l for list");
+	if (file == null || (file.equals("-convert") && args.length < 3)
+	    || (file.equals("-generate") && args.length < 4)
+	    || (args.length > 1 && args[1].equals("path") && args.length < 4)) {
+	    System.out.println("usage: java GraphTester file [dataStructure]\n\tdataStructure: pq for priority queue, l for list or ds for parallel delta-stepping"
+			       + "\n       java GraphTester file path source target [bi | alt]\n\tbi: search from both ends, alt: A* with landmarks"
+			       + "\n       java GraphTester -convert textFile binaryFile"
+			       + "\n       java GraphTester -generate type vertices textFile [seed]\n\ttype: random, rmat, grid or dag"
+			       + "\n       -metrics with a search also prints what each algorithm did"
+			       + "\n       -offheap reads a text file straight into memory outside the heap");
+	    System.exit(0);
+	}
+	if (file.equals("-convert")) {
+	    convert(args[1], args[2]);
+	    System.exit(0);
+	}
+	if (file.equals("-generate")) {
+	    generate(args[1], Integer.parseInt(args[2]), args[3], (args.length > 4 ? Long.parseLong(args[4]) : 1));
 	    System.exit(0);
 	}
 	if (args.length > 1) {
 	    switch (args[1]) {
 	    case "pq":
-		timing = true;
-		break;
 	    case "l":
+	    case "ds":
 		timing = true;
-		usePriorityQueue = false;
+		dataStructure = args[1];
 		break;
 	    }
 	}
-	Graph g = readFile(file);
+	Graph g = loadGraph(file, offHeap);
 	if (g == null) { System.exit(0); }
-      	printShortestPaths(g, g.getVertex("1"), timing, usePriorityQueue);
+	if (args.length > 1 && args[1].equals("path")) {
+	    printShortestPath((IndexedGraph)g, args[2], args[3], (args.length > 4 ? args[4] : ""));
+	    if (metrics) { printMetrics(); }
+	    System.exit(0);
+	}
+      	printShortestPaths(g, g.getVertex("1"), timing, dataStructure);
+	if (metrics) { printMetrics(); }
 	
 	/*PriorityQ<Integer> q = new PriorityQ<Integer>(11, new Comparator<Integer>() {
 		public int compare(Integer a, Integer b) {
@@ -72,81 +99,236 @@ public class GraphTester {
     }
 
     public static void printShortestPaths(Graph g, Vertex v, boolean timing, boolean usePriorityQueue) {
+	printShortestPaths(g, v, timing, (usePriorityQueue ? "pq" : "l"));
+    }
+
+    /**
+     * @param g
+     * @param v
+     * @param timing only report how long the search took
+     * @param dataStructure "pq" for a priority queue, "l" for a list or
+     *        "ds" for parallel delta-stepping
+     */
+    public static void printShortestPaths(Graph g, Vertex v, boolean timing, String dataStructure) {
 	long startTime = System.nanoTime();
-	TreeMap<Vertex, String> shortestPaths = (usePriorityQueue?
-						 AdjacencyListDirectedGraph.getShortestPathsPriorityQueue(g, v):
-						 AdjacencyListDirectedGraph.getShortestPathsList(g, v));
+	ShortestPathResult shortestPaths = null;
+	switch (dataStructure) {
+	case "l":
+	    AdjacencyListDirectedGraph.getShortestPathsList(g, v);
+	    break;
+	case "ds":
+	    shortestPaths = DeltaSteppingShortestPaths.shortestPaths(g, v);
+	    break;
+	default:
+	    shortestPaths = DijkstraShortestPaths.shortestPaths(g, v);
+	}
 	long endTime = System.nanoTime();
 	
-	if (timing) { System.out.println("Finding shortest paths with a " + (usePriorityQueue?"priority queue":"list") + " took " + ((endTime-startTime)/1000000.0) + " ms"); }
+	if (timing) {
+	    String name = (dataStructure.equals("l") ? "a list" : dataStructure.equals("ds") ? "delta-stepping" : "a priority queue");
+	    System.out.println("Finding shortest paths with " + name + " took " + ((endTime-startTime)/1000000.0) + " ms");
+	}
 	else {
-	    HashMap<Vertex, Float> distance = new HashMap<Vertex, Float>();
-	    HashMap<Vertex, Vertex> predecessor = new HashMap<Vertex, Vertex>();
-	    
-	    for (Map.Entry<Vertex, String> entry : shortestPaths.entrySet()) {
-		String[] data = entry.getValue().split(" ");
-		distance.put(entry.getKey(), Float.parseFloat(data[0]));
-		predecessor.put(entry.getKey(), g.getVertex(data[1]));
+	    if (shortestPaths == null) {
+		shortestPaths = DijkstraShortestPaths.shortestPaths(g, v);
 	    }
 	    
-	    for (Vertex w : g.getVertices()) {
-		String path = "";
-		Vertex currentVertex = w;
-		while (currentVertex != null) {
-		    path = " " + currentVertex + path;
-		    currentVertex = predecessor.get(currentVertex);
+	    ShortestPathWriter writer = new ShortestPathWriter(System.out);
+	    try {
+		if (g instanceof MappedDirectedGraph) {
+		    writer.write(shortestPaths, byLabel(g));
+		}
+		else if (g == shortestPaths.getGraph()) {
+		    writer.writeAll(shortestPaths);
+		}
+		else {
+		    writer.write(shortestPaths, g.getVertices());
 		}
-		System.out.println("Shortest path to " + w + ":" + path + ": cost = " + distance.get(w));
+		writer.flush();
+	    }
+	    catch (IOException e) {
+		System.out.println("Could not write shortest paths: " + e.getMessage());
 	    }
 
 	}
 
     }
     
-    public static AdjacencyListDirectedGraph readFile(String file) {
-	AdjacencyListDirectedGraph g = new AdjacencyListDirectedGraph();
-	System.out.println("Reading from file...");
-	try {
-	    Scanner s = new Scanner(new File(file));
-	    int vertices = 0;
-	    if (!s.hasNextLine()) {
-		System.out.println("Invalid file contents.");
-		return null;
+    /**
+     * The vertices of g sorted by label, the order a graph read onto the
+     * heap prints in whatever order its file gave the ids.
+     */
+    private static List<Vertex> byLabel(Graph g) {
+	ArrayList<Vertex> vertices = new ArrayList<Vertex>();
+	for (Vertex v : g.getVertices()) {
+	    vertices.add(v);
+	}
+	Collections.sort(vertices);
+	return vertices;
+    }
+    
+    /**
+     * Print the shortest path from source to target, in the same form as
+     * printShortestPaths, and how many vertices the search settled.
+     * @param g
+     * @param source
+     * @param target
+     * @param mode "bi" to search from both ends, "alt" for A* with
+     *        landmarks, otherwise Dijkstra stopped at the target
+     */
+    public static void printShortestPath(IndexedGraph g, String source, String target, String mode) {
+	if (!g.hasVertex(source) || !g.hasVertex(target)) {
+	    System.out.println("No vertex " + (g.hasVertex(source) ? target : source));
+	    return;
+	}
+	int s = g.indexOf(source);
+	int t = g.indexOf(target);
+	ShortestPath path;
+	long startTime;
+	if (mode.equals("alt")) {
+	    startTime = System.nanoTime();
+	    AStarShortestPath search = new AStarShortestPath(g, LandmarkHeuristic.build(g));
+	    System.out.println("Choosing landmarks took " + ((System.nanoTime()-startTime)/1000000.0) + " ms");
+	    startTime = System.nanoTime();
+	    path = search.shortestPath(s, t);
+	}
+	else {
+	    PointToPointShortestPath search = new PointToPointShortestPath(g);
+	    startTime = System.nanoTime();
+	    path = (mode.equals("bi") ? search.bidirectional(s, t) : search.shortestPath(s, t));
+	}
+	long endTime = System.nanoTime();
+	System.out.println("Shortest path to " + target + ":" + path);
+	System.out.println("Settled " + path.getSettledCount() + " of " + g.vertexCount() + " vertices in "
+			   + ((endTime-startTime)/1000000.0) + " ms");
+    }
+
+    /**
+     * Print the counts GraphMetrics kept for each algorithm that ran, and
+     * for one that ran more than once its last query on its own, and check
+     * that its MBean was registered when metrics were switched on.
+     */
+    public static void printMetrics() {
+	for (GraphMetrics.Algorithm algorithm : GraphMetrics.algorithms()) {
+	    GraphMetrics.Counts totals = algorithm.totals();
+	    if (totals.getQueries() == 0) continue;
+	    System.out.println(totals);
+	    if (totals.getQueries() > 1) {
+		System.out.println("  last query: " + algorithm.lastQuery());
 	    }
-	    vertices = Integer.parseInt(s.nextLine());
-	    
-	    for (int i = 0; i < vertices; i++) {
-		if (!s.hasNextLine()) {
+	    if (!GraphMetrics.isRegistered(algorithm)) {
+		System.out.println("  not registered with the platform MBean server");
+	    }
+	}
+    }
+
+    /**
+     * Load a graph for querying from either a graphPos text file or a
+     * binary graph file written by convert.
+     * @param file
+     * @return the graph, or null if it could not be read
+     */
+    public static Graph loadGraph(String file) {
+	return loadGraph(file, false);
+    }
+
+    /**
+     * @param file
+     * @param offHeap read a text file into direct buffers with
+     *        MappedDirectedGraph.readText rather than onto the heap
+     * @return the graph, or null if it could not be read
+     */
+    public static Graph loadGraph(String file, boolean offHeap) {
+	if (offHeap && !MappedDirectedGraph.isBinaryGraph(file)) {
+	    System.out.println("Reading from file...");
+	    try {
+		MappedDirectedGraph g = MappedDirectedGraph.readText(file);
+		if (g == null) {
 		    System.out.println("Invalid file contents.");
-		    return null;
-		}
-		String[] line = s.nextLine().split("\\s+");
-
-		String v = new String();
-		String w = new String();
-		float weight = 1.0f;
-
-		for (int j = 0; j < line.length; j++) {
-		    if (j == 0) { v = line[j]; }
-		    else {
-			switch ((j-1)%2) {
-			case 0: 
-			    w = line[j];
-			    break;
-			case 1: 
-			    weight = Float.parseFloat(line[j]);
-			    g.addEdge(v, w, weight);
-			    break;
-			}
-		    }
 		}
+		return g;
 	    }
-	    s.close();
+	    catch (NoSuchFileException e) {
+		System.out.println("File not found. Check path and try again");
+		return null;
+	    }
+	    catch (IOException e) {
+		System.out.println("Could not read file: " + e.getMessage());
+		return null;
+	    }
+	}
+	if (MappedDirectedGraph.isBinaryGraph(file)) {
+	    System.out.println("Reading from file...");
+	    try {
+		return new MappedDirectedGraph(file);
+	    }
+	    catch (IOException e) {
+		System.out.println("Could not read file: " + e.getMessage());
+		return null;
+	    }
+	}
+	AdjacencyListDirectedGraph g = readFile(file);
+	return (g == null ? null : g.freeze());
+    }
+
+    /**
+     * Convert a graphPos text file to the binary graph format.
+     * @param textFile
+     * @param binaryFile
+     */
+    public static void convert(String textFile, String binaryFile) {
+	AdjacencyListDirectedGraph g = readFile(textFile);
+	if (g == null) return;
+	try {
+	    MappedDirectedGraph.write(g, binaryFile);
+	    System.out.println("Wrote " + binaryFile);
+	}
+	catch (IOException e) {
+	    System.out.println("Could not write file: " + e.getMessage());
+	}
+    }
+
+    /**
+     * Write a synthetic graph to a graphPos text file.
+     * @param type random, rmat, grid or dag
+     * @param vertices roughly how many vertices to generate
+     * @param textFile
+     * @param seed
+     */
+    public static void generate(String type, int vertices, String textFile, long seed) {
+	GraphGenerator generator = GraphGenerator.byName(type, vertices, seed);
+	if (generator == null) {
+	    System.out.println("Unknown graph type " + type);
+	    return;
+	}
+	try {
+	    long startTime = System.nanoTime();
+	    long edges = generator.writeText(textFile);
+	    long endTime = System.nanoTime();
+	    System.out.println(GraphGenerator.report(generator, edges, endTime-startTime));
 	}
-	catch (FileNotFoundException e) {
+	catch (IOException e) {
+	    System.out.println("Could not write file: " + e.getMessage());
+	}
+    }
+
+    public static AdjacencyListDirectedGraph readFile(String file) {
+	System.out.println("Reading from file...");
+	AdjacencyListDirectedGraph g;
+	try {
+	    g = GraphFileLoader.load(file);
+	}
+	catch (NoSuchFileException e) {
 	    System.out.println("File not found. Check path and try again");
 	    return null;
 	}
+	catch (IOException e) {
+	    System.out.println("Could not read file: " + e.getMessage());
+	    return null;
+	}
+	if (g == null) {
+	    System.out.println("Invalid file contents.");
+	}
 
 	return g;
     }
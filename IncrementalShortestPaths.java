@@ -0,0 +1,224 @@
+import java.util.*;
+
+/**
+ * Shortest paths from a fixed source that are kept up to date as edges are
+ * added to an AdjacencyListDirectedGraph.  Adding an edge can only make
+ * paths shorter, so instead of searching the whole graph again each new
+ * edge that shortens the path to its end vertex queues that vertex, and a
+ * Dijkstra search seeded with just the queued vertices carries the
+ * improvement forward.  It stops wherever distances do not change, so an
+ * update costs time for the vertices whose distance drops and their
+ * outgoing edges, not for the whole graph.  Edges added in a batch are
+ * propagated together the next time a distance is asked for.  If edgeAdded
+ * finds that other edges were added without being reported, it computes
+ * the paths again from scratch.
+ *
+ * Vertices get ids in the order they are first seen here, and the
+ * distance and predecessor arrays grow as the graph does.  Removing
+ * edges or raising weights is not supported.
+ */
+public class IncrementalShortestPaths {
+
+    private AdjacencyListDirectedGraph g;
+    private Vertex source;
+    private HashMap<String, Integer> ids;
+    private Vertex[] vertices;
+    private float[] distance;
+    private int[] predecessor;
+    private IndexedPriorityQ pending;
+    private Propagation propagation = new Propagation();
+    private int version;
+    private int updated;
+
+    /**
+     * Compute the shortest paths from source in g from scratch.
+     * @param g
+     * @param source
+     */
+    public IncrementalShortestPaths(AdjacencyListDirectedGraph g, Vertex source) {
+	this(g, DijkstraShortestPaths.shortestPaths(g, source));
+    }
+
+    /**
+     * Start from an existing result, which must have been computed on g as
+     * it is now.
+     * @param g
+     * @param initial
+     */
+    public IncrementalShortestPaths(AdjacencyListDirectedGraph g, ShortestPathResult initial) {
+	this.g = g;
+	start(initial);
+    }
+
+    /**
+     * Take the ids, distances and predecessors of initial, computed on g as
+     * it is now.
+     */
+    private void start(ShortestPathResult initial) {
+	IndexedGraph ig = initial.getGraph();
+	int n = ig.vertexCount();
+	ids = new HashMap<String, Integer>(n * 2);
+	vertices = new Vertex[Math.max(n, 16)];
+	distance = new float[vertices.length];
+	predecessor = new int[vertices.length];
+	for (int i = 0; i < n; i++) {
+	    Vertex v = g.getVertex(ig.vertexAt(i).getLabel());
+	    ids.put(v.getLabel(), i);
+	    vertices[i] = v;
+	    distance[i] = initial.distanceTo(i);
+	    predecessor[i] = initial.predecessorOf(i);
+	}
+	source = vertices[initial.sourceId()];
+	pending = new IndexedPriorityQ(vertices.length);
+	version = g.getModificationCount();
+    }
+
+    public Vertex getSource() {
+	return source;
+    }
+
+    /**
+     * Add edge v-w to the graph and update the shortest paths.
+     * @param v
+     * @param w
+     * @param weight must not be negative
+     */
+    public void addEdge(String v, String w, float weight) {
+	g.addEdge(v, w, weight);
+	edgeAdded(v, w, weight);
+    }
+
+    /**
+     * Update the shortest paths for an edge v-w that has just been added to
+     * the graph by other means.  If it is not the only edge added since the
+     * last update, the paths are computed again from scratch.
+     * @param v
+     * @param w
+     * @param weight
+     */
+    public void edgeAdded(String v, String w, float weight) {
+	if (g.getModificationCount() != version + 1) {
+	    start(DijkstraShortestPaths.shortestPaths(g, source));
+	    updated = ids.size();
+	    return;
+	}
+	updated = 0;
+	int vi = idOf(v);
+	int wi = idOf(w);
+	float dw = distance[vi] + weight;
+	if (dw < distance[wi]) {
+	    distance[wi] = dw;
+	    predecessor[wi] = vi;
+	    pending.offerOrDecrease(wi, dw);
+	}
+	version = g.getModificationCount();
+    }
+
+    /**
+     * Number of vertices whose distance dropped in the last update, or all
+     * of them if it computed the paths again from scratch.
+     * @return
+     */
+    public int getUpdatedCount() {
+	propagate();
+	return updated;
+    }
+
+    public boolean hasPathTo(Vertex v) {
+	return distanceTo(v) != Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Length of the shortest path from the source to v.
+     * @param v
+     * @return the distance, or Float.POSITIVE_INFINITY if v is unreachable
+     *         or not in the graph
+     */
+    public float distanceTo(Vertex v) {
+	propagate();
+	Integer id = ids.get(v.getLabel());
+	return (id == null ? Float.POSITIVE_INFINITY : distance[id]);
+    }
+
+    /**
+     * The vertex before v on the shortest path from the source.
+     * @param v
+     * @return the predecessor, or null for the source and unreachable vertices
+     */
+    public Vertex predecessorOf(Vertex v) {
+	propagate();
+	Integer id = ids.get(v.getLabel());
+	return (id == null || predecessor[id] < 0 ? null : vertices[predecessor[id]]);
+    }
+
+    /**
+     * The vertices on the shortest path from the source to v.
+     * @param v
+     * @return the path, or an empty list if v is unreachable
+     */
+    public List<Vertex> pathTo(Vertex v) {
+	LinkedList<Vertex> path = new LinkedList<Vertex>();
+	if (!hasPathTo(v)) return path;
+	for (int id = ids.get(v.getLabel()); id >= 0; id = predecessor[id]) {
+	    path.addFirst(vertices[id]);
+	}
+	return path;
+    }
+
+    /**
+     * Carry queued improvements forward.
+     */
+    private void propagate() {
+	if (version != g.getModificationCount()) {
+	    throw new ConcurrentModificationException("edges were added to the graph without edgeAdded");
+	}
+	if (pending.isEmpty()) return;
+	updated = 0;
+	while (!pending.isEmpty()) {
+	    int v = pending.poll();
+	    updated++;
+	    propagation.v = v;
+	    propagation.dv = distance[v];
+	    g.forEachEdge(vertices[v], propagation);
+	}
+    }
+
+    /**
+     * Lowers the distances of the destinations of the edges leaving v.
+     */
+    private class Propagation implements Graph.EdgeVisitor {
+
+	private int v;
+	private float dv;
+
+	public void visit(Vertex w, float weight) {
+	    int wi = idOf(w.getLabel());
+	    float dw = dv + weight;
+	    if (dw < distance[wi]) {
+		distance[wi] = dw;
+		predecessor[wi] = v;
+		pending.offerOrDecrease(wi, dw);
+	    }
+	}
+    }
+
+    /**
+     * Id of the vertex labelled v, giving it one if it is new.
+     */
+    private int idOf(String v) {
+	Integer id = ids.get(v);
+	if (id != null) return id;
+	int n = ids.size();
+	if (n == vertices.length) {
+	    vertices = Arrays.copyOf(vertices, n*2);
+	    distance = Arrays.copyOf(distance, n*2);
+	    predecessor = Arrays.copyOf(predecessor, n*2);
+	}
+	ids.put(v, n);
+	vertices[n] = g.getVertex(v);
+	distance[n] = Float.POSITIVE_INFINITY;
+	predecessor[n] = -1;
+	return n;
+    }
+
+}
@@ -0,0 +1,71 @@
+/**
+ * A read-only graph whose vertices are numbered 0 to vertexCount()-1 and
+ * whose outgoing edges are stored contiguously per vertex, so algorithms
+ * can work on int ids and edge positions instead of Vertex objects.  The
+ * edges of vertex id v are at positions edgeStart(v) up to edgeEnd(v),
+ * grouped by target id.
+ */
+public interface IndexedGraph extends Graph {
+
+    /**
+     * Number of vertices in the graph.
+     * @return
+     */
+    int vertexCount();
+
+    /**
+     * Number of edges in the graph, counting parallel edges separately.
+     * @return
+     */
+    int edgeCount();
+
+    /**
+     * Id of the vertex with label v.
+     * @param v
+     * @return the id, or -1 if v is not in the graph
+     */
+    int indexOf(String v);
+
+    /**
+     * Id of vertex v.
+     * @param v
+     * @return the id, or -1 if v is not in the graph
+     */
+    int indexOf(Vertex v);
+
+    /**
+     * The vertex with id i.
+     * @param i
+     * @return
+     */
+    Vertex vertexAt(int i);
+
+    /**
+     * Position of the first outgoing edge of vertex id v.
+     * @param v
+     * @return
+     */
+    int edgeStart(int v);
+
+    /**
+     * Position one past the last outgoing edge of vertex id v.
+     * @param v
+     * @return
+     */
+    int edgeEnd(int v);
+
+    /**
+     * Target vertex id of the edge at position e.
+     * @param e
+     * @return
+     */
+    int target(int e);
+
+    /**
+     * Weight of the edge at position e.
+     * @param e
+     * @return
+     */
+    float weight(int e);
+
+}
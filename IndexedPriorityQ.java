@@ -0,0 +1,265 @@
+import java.util.*;
+
+/**
+ * A d-ary min heap of int handles ordered by a float priority.  Handles are
+ * small non-negative ints (typically dense vertex ids) and the heap keeps a
+ * handle to heap position table so contains, priorityOf and decreaseKey
+ * need no search.
+ */
+public class IndexedPriorityQ {
+
+    private static final int DEFAULT_ARITY = 4;
+
+    private int arity;
+    private int[] heap;
+    private float[] heapPriority;
+    private int[] position;
+    private int elementNo;
+    private long offerCount;
+    private long decreaseCount;
+    private long pollCount;
+
+    public IndexedPriorityQ() {
+	this(11);
+    }
+
+    public IndexedPriorityQ(int capacity) {
+	this(capacity, DEFAULT_ARITY);
+    }
+
+    /**
+     * @param capacity the number of handles expected, handles 0 to
+     *        capacity-1 can be used without the tables growing
+     * @param arity the number of children per heap node
+     */
+    public IndexedPriorityQ(int capacity, int arity) {
+	if (arity < 2) {
+	    throw new IllegalArgumentException("arity must be at least 2");
+	}
+	this.arity = arity;
+	capacity = Math.max(capacity, 1);
+	heap = new int[capacity];
+	heapPriority = new float[capacity];
+	position = new int[capacity];
+	Arrays.fill(position, -1);
+	elementNo = 0;
+    }
+
+    /**
+     * Insert handle with the given priority.
+     * @param handle a handle not already in the queue
+     * @param priority
+     */
+    public void offer(int handle, float priority) {
+	if (handle >= position.length) {
+	    resize(handle+1);
+	}
+	if (position[handle] >= 0) {
+	    throw new IllegalArgumentException("handle " + handle + " is already queued");
+	}
+	if (elementNo == heap.length) {
+	    heap = Arrays.copyOf(heap, heap.length*2);
+	    heapPriority = Arrays.copyOf(heapPriority, heap.length);
+	}
+	offerCount++;
+	bubbleUp(elementNo++, handle, priority);
+    }
+
+    /**
+     * Lower the priority of a queued handle.  Does nothing if priority is
+     * not smaller than the current one.
+     * @param handle
+     * @param priority
+     */
+    public void decreaseKey(int handle, float priority) {
+	int index = indexOf(handle);
+	decreaseCount++;
+	if (priority < heapPriority[index]) {
+	    bubbleUp(index, handle, priority);
+	}
+    }
+
+    /**
+     * Offer handle if it is not queued, otherwise decrease its key.
+     * @param handle
+     * @param priority
+     */
+    public void offerOrDecrease(int handle, float priority) {
+	if (contains(handle)) decreaseKey(handle, priority);
+	else offer(handle, priority);
+    }
+
+    /**
+     * Remove and return the handle with the smallest priority.
+     * @return
+     */
+    public int poll() {
+	if (elementNo == 0) {
+	    throw new NoSuchElementException();
+	}
+	int result = heap[0];
+	position[result] = -1;
+	pollCount++;
+	if (--elementNo > 0) {
+	    siftDown(0, heap[elementNo], heapPriority[elementNo]);
+	}
+	return result;
+    }
+
+    /**
+     * The handle with the smallest priority, without removing it.
+     * @return
+     */
+    public int peek() {
+	if (elementNo == 0) {
+	    throw new NoSuchElementException();
+	}
+	return heap[0];
+    }
+
+    /**
+     * The smallest priority in the queue.
+     * @return
+     */
+    public float peekPriority() {
+	if (elementNo == 0) {
+	    throw new NoSuchElementException();
+	}
+	return heapPriority[0];
+    }
+
+    /**
+     * Remove a queued handle.
+     * @param handle
+     */
+    public void remove(int handle) {
+	int index = indexOf(handle);
+	position[handle] = -1;
+	if (index == --elementNo) return;
+	int last = heap[elementNo];
+	float lastPriority = heapPriority[elementNo];
+	if (lastPriority < heapPriority[index]) bubbleUp(index, last, lastPriority);
+	else siftDown(index, last, lastPriority);
+    }
+
+    public boolean contains(int handle) {
+	return handle >= 0 && handle < position.length && position[handle] >= 0;
+    }
+
+    public float priorityOf(int handle) {
+	return heapPriority[indexOf(handle)];
+    }
+
+    public int size() {
+	return elementNo;
+    }
+
+    public boolean isEmpty() {
+	return elementNo == 0;
+    }
+
+    /**
+     * Number of calls to offer over the life of the queue, counting those
+     * made by offerOrDecrease.
+     * @return
+     */
+    public long getOfferCount() {
+	return offerCount;
+    }
+
+    /**
+     * Number of calls to decreaseKey over the life of the queue, counting
+     * those made by offerOrDecrease.
+     * @return
+     */
+    public long getDecreaseCount() {
+	return decreaseCount;
+    }
+
+    /**
+     * Number of handles polled over the life of the queue.
+     * @return
+     */
+    public long getPollCount() {
+	return pollCount;
+    }
+
+    /**
+     * Empty the queue.  Costs time proportional to the number of queued
+     * handles, not the capacity, so a queue can be reused cheaply.
+     */
+    public void clear() {
+	for (int i = 0; i < elementNo; i++) {
+	    position[heap[i]] = -1;
+	}
+	elementNo = 0;
+    }
+
+    private int indexOf(int handle) {
+	if (!contains(handle)) {
+	    throw new NoSuchElementException("handle " + handle + " is not queued");
+	}
+	return position[handle];
+    }
+
+    private void resize(int minLength) {
+	int oldLength = position.length;
+	int newLength = oldLength;
+	while (newLength < minLength) {
+	    newLength *= 2;
+	}
+	position = Arrays.copyOf(position, newLength);
+	Arrays.fill(position, oldLength, newLength, -1);
+    }
+
+    /**
+     * Move the hole at index up until handle fits, then place it there.
+     */
+    private void bubbleUp(int index, int handle, float priority) {
+	while (index > 0) {
+	    int parent = (index-1)/arity;
+	    if (heapPriority[parent] <= priority) break;
+	    heap[index] = heap[parent];
+	    heapPriority[index] = heapPriority[parent];
+	    position[heap[index]] = index;
+	    index = parent;
+	}
+	heap[index] = handle;
+	heapPriority[index] = priority;
+	position[handle] = index;
+    }
+
+    /**
+     * Move the hole at index down until handle fits, then place it there.
+     */
+    private void siftDown(int index, int handle, float priority) {
+	while (true) {
+	    int firstChild = arity*index + 1;
+	    if (firstChild >= elementNo) break;
+	    int lastChild = Math.min(firstChild + arity, elementNo);
+	    int smallest = firstChild;
+	    for (int child = firstChild + 1; child < lastChild; child++) {
+		if (heapPriority[child] < heapPriority[smallest]) smallest = child;
+	    }
+	    if (heapPriority[smallest] >= priority) break;
+	    heap[index] = heap[smallest];
+	    heapPriority[index] = heapPriority[smallest];
+	    position[heap[index]] = index;
+	    index = smallest;
+	}
+	heap[index] = handle;
+	heapPriority[index] = priority;
+	position[handle] = index;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder result = new StringBuilder("[");
+	for (int i = 0; i < elementNo; i++) {
+	    if (i != 0) result.append(", ");
+	    result.append(heap[i]).append('=').append(heapPriority[i]);
+	}
+	return result.append("]").toString();
+    }
+
+}
@@ -0,0 +1,50 @@
+import java.util.*;
+
+/**
+ * Topological sort by repeatedly removing vertices with no remaining
+ * incoming edges (Kahn's algorithm).  Uses the incoming edge index of
+ * AdjacencyListDirectedGraph so it runs in O(V+E) without recursion.
+ */
+public class KahnTopologicalSort {
+
+    /**
+     * Topologically sort g.
+     * @param g a directed acyclic graph
+     * @return the vertices in topological order, or null if g has a cycle
+     */
+    public static List<Vertex> sort(AdjacencyListDirectedGraph g) {
+	HashMap<Vertex, Integer> remaining = new HashMap<Vertex, Integer>();
+	ArrayDeque<Vertex> ready = new ArrayDeque<Vertex>();
+	for (Vertex v : g.getVertices()) {
+	    int inDegree = g.getInDegree(v);
+	    if (inDegree == 0) {
+		ready.add(v);
+	    }
+	    else {
+		remaining.put(v, inDegree);
+	    }
+	}
+
+	ArrayList<Vertex> l = new ArrayList<Vertex>();
+	while (!ready.isEmpty()) {
+	    Vertex v = ready.poll();
+	    l.add(v);
+	    for (Edge e : g.getOutgoingEdges(v)) {
+		Vertex w = e.getDestination();
+		int inDegree = remaining.get(w) - 1;
+		if (inDegree == 0) {
+		    remaining.remove(w);
+		    ready.add(w);
+		}
+		else {
+		    remaining.put(w, inDegree);
+		}
+	    }
+	}
+	if (!remaining.isEmpty()) {
+	    return null;
+	}
+	return l;
+    }
+
+}
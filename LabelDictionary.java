@@ -0,0 +1,251 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Maps vertex labels to dense int ids, numbered in the order the labels
+ * were first interned.  The labels are kept as UTF-8 in one byte array
+ * with an offsets array beside it, label i being bytes offsets[i] up to
+ * offsets[i+1], instead of as one String object each, and the lookup
+ * table is open addressing over ids, so a million labels cost a few
+ * arrays rather than a few million objects.  Looking up or interning an
+ * ASCII label compares its chars with the stored bytes directly and
+ * allocates nothing; label(i) makes a new String each time and is meant
+ * for output.
+ */
+public class LabelDictionary {
+
+    private byte[] bytes;
+    private int[] offsets;
+    private int[] hashes;
+    private int[] slots;
+    private int size;
+
+    public LabelDictionary() {
+	this(16, 16 * 8);
+    }
+
+    /**
+     * @param expectedLabels
+     * @param expectedBytes total UTF-8 length of the labels
+     */
+    public LabelDictionary(int expectedLabels, int expectedBytes) {
+	int capacity = Math.max(expectedLabels, 16);
+	bytes = new byte[Math.max(expectedBytes, 16)];
+	offsets = new int[capacity + 1];
+	hashes = new int[capacity];
+	slots = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+	size = 0;
+    }
+
+    /**
+     * Number of labels interned.
+     * @return
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Bytes used by the label store and lookup table.
+     * @return
+     */
+    public long sizeInBytes() {
+	return bytes.length + 4L * (offsets.length + hashes.length + slots.length);
+    }
+
+    /**
+     * The id of label v.
+     * @param v
+     * @return the id, or -1 if v has not been interned
+     */
+    public int indexOf(String v) {
+	if (!isAscii(v)) {
+	    byte[] utf8 = v.getBytes(StandardCharsets.UTF_8);
+	    return find(hash(utf8, 0, utf8.length), utf8, 0, utf8.length);
+	}
+	int hash = v.hashCode();
+	int mask = slots.length - 1;
+	for (int slot = mix(hash) & mask;; slot = (slot+1) & mask) {
+	    int id = slots[slot] - 1;
+	    if (id < 0) return -1;
+	    if (hashes[id] == hash && sameChars(id, v)) return id;
+	}
+    }
+
+    /**
+     * The id of label v, giving it the next id if it is new.
+     * @param v
+     * @return
+     */
+    public int intern(String v) {
+	int id = indexOf(v);
+	if (id >= 0) return id;
+	byte[] utf8 = v.getBytes(StandardCharsets.UTF_8);
+	return add(hash(utf8, 0, utf8.length), utf8, 0, utf8.length);
+    }
+
+    /**
+     * The id of the label held as UTF-8 in buf[start, end), giving it the
+     * next id if it is new.  Nothing is allocated for a known label.
+     * @param buf
+     * @param start
+     * @param end
+     * @return
+     */
+    public int intern(ByteBuffer buf, int start, int end) {
+	int hash = 0;
+	for (int i = start; i < end; i++) {
+	    hash = 31*hash + buf.get(i);
+	}
+	int mask = slots.length - 1;
+	for (int slot = mix(hash) & mask;; slot = (slot+1) & mask) {
+	    int id = slots[slot] - 1;
+	    if (id < 0) break;
+	    if (hashes[id] == hash && offsets[id+1] - offsets[id] == end - start) {
+		int j = 0;
+		for (int s = offsets[id]; j < end - start && bytes[s+j] == buf.get(start+j); j++);
+		if (j == end - start) return id;
+	    }
+	}
+	byte[] utf8 = new byte[end - start];
+	for (int i = 0; i < utf8.length; i++) {
+	    utf8[i] = buf.get(start+i);
+	}
+	return add(hash, utf8, 0, utf8.length);
+    }
+
+    /**
+     * The label with id i.
+     * @param i
+     * @return
+     */
+    public String label(int i) {
+	return new String(bytes, offsets[i], offsets[i+1] - offsets[i], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The labels of ids 0 to size()-1.
+     * @return
+     */
+    public String[] labels() {
+	String[] labels = new String[size];
+	for (int i = 0; i < size; i++) {
+	    labels[i] = label(i);
+	}
+	return labels;
+    }
+
+    /**
+     * Position of the first byte of label i in the store; offsetOf(size())
+     * is the total length of the labels.
+     */
+    int offsetOf(int i) {
+	return offsets[i];
+    }
+
+    /**
+     * The hash of the bytes of label i, 31*hash + b over its bytes.
+     */
+    int hashOf(int i) {
+	return hashes[i];
+    }
+
+    /**
+     * Copy the bytes of label i into dst at pos.
+     */
+    void getBytes(int i, byte[] dst, int pos) {
+	System.arraycopy(bytes, offsets[i], dst, pos, offsets[i+1] - offsets[i]);
+    }
+
+    /**
+     * Copy the bytes of labels 0 to count-1 into dst at its position.
+     */
+    void putBytes(ByteBuffer dst, int count) {
+	dst.put(bytes, 0, offsets[count]);
+    }
+
+    private int find(int hash, byte[] utf8, int start, int end) {
+	int mask = slots.length - 1;
+	for (int slot = mix(hash) & mask;; slot = (slot+1) & mask) {
+	    int id = slots[slot] - 1;
+	    if (id < 0) return -1;
+	    if (hashes[id] == hash && sameBytes(id, utf8, start, end)) return id;
+	}
+    }
+
+    private boolean sameBytes(int id, byte[] utf8, int start, int end) {
+	if (offsets[id+1] - offsets[id] != end - start) return false;
+	for (int i = 0, s = offsets[id]; i < end - start; i++) {
+	    if (bytes[s+i] != utf8[start+i]) return false;
+	}
+	return true;
+    }
+
+    /**
+     * Label id against an ASCII String, whose chars are its UTF-8 bytes
+     * and whose hashCode is the hash of those bytes.
+     */
+    private boolean sameChars(int id, String v) {
+	if (offsets[id+1] - offsets[id] != v.length()) return false;
+	for (int i = 0, s = offsets[id]; i < v.length(); i++) {
+	    if (bytes[s+i] != v.charAt(i)) return false;
+	}
+	return true;
+    }
+
+    private int add(int hash, byte[] utf8, int start, int end) {
+	if (size == hashes.length) {
+	    hashes = Arrays.copyOf(hashes, size*2);
+	    offsets = Arrays.copyOf(offsets, size*2 + 1);
+	}
+	int length = end - start;
+	int used = offsets[size];
+	if (used + length > bytes.length) {
+	    bytes = Arrays.copyOf(bytes, Math.max(bytes.length*2, used + length));
+	}
+	System.arraycopy(utf8, start, bytes, used, length);
+	int id = size++;
+	offsets[size] = used + length;
+	hashes[id] = hash;
+	int mask = slots.length - 1;
+	int slot = mix(hash) & mask;
+	while (slots[slot] != 0) slot = (slot+1) & mask;
+	slots[slot] = id + 1;
+	if (size*2 > slots.length) {
+	    rehash();
+	}
+	return id;
+    }
+
+    private void rehash() {
+	slots = new int[slots.length*2];
+	int mask = slots.length - 1;
+	for (int id = 0; id < size; id++) {
+	    int slot = mix(hashes[id]) & mask;
+	    while (slots[slot] != 0) slot = (slot+1) & mask;
+	    slots[slot] = id + 1;
+	}
+    }
+
+    private static boolean isAscii(String v) {
+	for (int i = 0; i < v.length(); i++) {
+	    if (v.charAt(i) >= 0x80) return false;
+	}
+	return true;
+    }
+
+    private static int hash(byte[] utf8, int start, int end) {
+	int hash = 0;
+	for (int i = start; i < end; i++) {
+	    hash = 31*hash + utf8[i];
+	}
+	return hash;
+    }
+
+    private static int mix(int hash) {
+	hash *= 0x9E3779B9;
+	return hash ^ (hash >>> 16);
+    }
+
+}
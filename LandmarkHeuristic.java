@@ -0,0 +1,123 @@
+import java.util.*;
+
+/**
+ * The ALT (A*, landmarks, triangle inequality) heuristic.  A few landmark
+ * vertices are chosen and the shortest distances from every landmark to
+ * every vertex and from every vertex to every landmark are computed once
+ * with DijkstraShortestPaths.  For a landmark L the triangle inequality
+ * gives d(v, t) >= d(L, t) - d(L, v) and d(v, t) >= d(v, L) - d(t, L), and
+ * the estimate is the largest of these bounds over all landmarks.  The
+ * estimate is consistent, so A* with it settles every vertex at most once.
+ *
+ * The distances are stored vertex by vertex, the landmarks of one vertex
+ * next to each other, so an estimate reads two short runs of memory.
+ * Preprocessing costs two full searches per landmark and the tables take
+ * 2 x landmarks floats per vertex.  An instance is only read once built
+ * and may be shared between threads.
+ */
+public class LandmarkHeuristic implements AStarShortestPath.Heuristic {
+
+    public static final int DEFAULT_LANDMARKS = 8;
+
+    private int[] landmarks;
+    private float[] from;
+    private float[] to;
+
+    private LandmarkHeuristic(int[] landmarks, float[] from, float[] to) {
+	this.landmarks = landmarks;
+	this.from = from;
+	this.to = to;
+    }
+
+    /**
+     * Choose DEFAULT_LANDMARKS landmarks of g and compute their distances.
+     * @param g
+     * @return
+     */
+    public static LandmarkHeuristic build(IndexedGraph g) {
+	return build(g, DEFAULT_LANDMARKS);
+    }
+
+    /**
+     * Choose up to count landmarks of g by farthest selection and compute
+     * their distances.  The first landmark is the vertex farthest from
+     * vertex 0 and each later one is the vertex farthest from all the
+     * landmarks chosen so far, preferring vertices none of them reach, so
+     * the landmarks end up spread around the edges of the graph where their
+     * bounds are tightest.
+     * @param g
+     * @param count
+     * @return
+     */
+    public static LandmarkHeuristic build(IndexedGraph g, int count) {
+	int n = g.vertexCount();
+	count = Math.min(count, n);
+	IndexedGraph reverse = CompactDirectedGraph.transpose(g);
+	DijkstraShortestPaths forward = new DijkstraShortestPaths(g);
+	DijkstraShortestPaths backward = new DijkstraShortestPaths(reverse);
+
+	int[] landmarks = new int[count];
+	float[] from = new float[n * count];
+	float[] to = new float[n * count];
+	float[] nearest = new float[n];
+	Arrays.fill(nearest, Float.POSITIVE_INFINITY);
+	int next = (n == 0 ? -1 : farthest(forward.runInContext(0), nearest));
+	for (int i = 0; i < count; i++) {
+	    landmarks[i] = next;
+	    nearest[next] = -1.0f;
+	    ShortestPathResult fromLandmark = forward.runInContext(next);
+	    ShortestPathResult toLandmark = backward.runInContext(next);
+	    for (int v = 0; v < n; v++) {
+		float d = fromLandmark.distanceTo(v);
+		from[v*count + i] = d;
+		to[v*count + i] = toLandmark.distanceTo(v);
+		if (nearest[v] >= 0 && d < nearest[v]) nearest[v] = d;
+	    }
+	    next = farthest(null, nearest);
+	}
+	return new LandmarkHeuristic(landmarks, from, to);
+    }
+
+    /**
+     * The vertex with the largest distance that is not already a landmark
+     * (marked -1 in nearest), taking unreached vertices first.  With a
+     * result, distances come from it; otherwise from nearest.
+     */
+    private static int farthest(ShortestPathResult result, float[] nearest) {
+	int best = -1;
+	float bestDistance = -1.0f;
+	for (int v = 0; v < nearest.length; v++) {
+	    if (nearest[v] < 0) continue;
+	    float d = (result == null ? nearest[v] : result.distanceTo(v));
+	    if (d > bestDistance) {
+		best = v;
+		bestDistance = d;
+		if (d == Float.POSITIVE_INFINITY) break;
+	    }
+	}
+	return best;
+    }
+
+    /**
+     * The landmark vertex ids.
+     * @return
+     */
+    public int[] landmarks() {
+	return landmarks.clone();
+    }
+
+    public float estimate(int v, int target) {
+	int k = landmarks.length;
+	int vi = v * k;
+	int ti = target * k;
+	float best = 0.0f;
+	for (int i = 0; i < k; i++) {
+	    float bound = from[ti + i] - from[vi + i];
+	    if (bound > best) best = bound;
+	    bound = to[vi + i] - to[ti + i];
+	    if (bound > best) best = bound;
+	}
+	return best;
+    }
+
+}
@@ -0,0 +1,838 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A read-only graph whose edges, weights and labels are held outside the
+ * Java heap, either memory mapped from a binary graph file or in direct
+ * buffers filled from another graph by offHeap.  Only the vertex objects
+ * handed out so far live on the heap, so the heap and the garbage
+ * collector's work stay small however big the graph is.  Nothing is parsed
+ * when a file is opened; vertex objects are made the first time they are
+ * asked for and label lookups probe a hash table stored with the labels.
+ * Because the data is mapped rather than read, the page cache shares it
+ * between processes that open the same file.  Vertex objects are made
+ * once per id however many threads ask for them at once.  After close
+ * every call on the graph throws IllegalStateException; the memory itself
+ * is only returned when the garbage collector frees the buffers.
+ *
+ * The file is little-endian and laid out as
+ * <pre>
+ *   header        magic, version, vertexCount, edgeCount, tableSize (ints),
+ *                 labelBytes (long), padded to 32 bytes
+ *   labelOffsets  int[vertexCount+1]  label i is labels[labelOffsets[i], labelOffsets[i+1])
+ *   offsets       int[vertexCount+1]  edges of vertex i are at offsets[i] to offsets[i+1]
+ *   targets       int[edgeCount]      target id of each edge, grouped by target per vertex
+ *   weights       float[edgeCount]    weight of each edge
+ *   slots         int[tableSize]      open addressing table of id+1, 0 for empty
+ *   labels        byte[labelBytes]    UTF-8 vertex labels
+ * </pre>
+ * Use write to produce a file from any Graph.  Edges read back from the
+ * file are labelled with their position since edge labels are not stored.
+ */
+public class MappedDirectedGraph implements IndexedGraph, Closeable {
+
+    private static final int MAGIC = 0x47524146;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int SECTIONS = 6;
+    private static final VarHandle VERTICES = MethodHandles.arrayElementVarHandle(Vertex[].class);
+
+    private volatile State state;
+
+    /**
+     * Map a file written by write.
+     * @param file
+     * @throws IOException if the file is not a graph file of this version
+     */
+    public MappedDirectedGraph(String file) throws IOException {
+	try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+	    if (channel.size() < HEADER_SIZE) {
+		throw new IOException(file + " is not a binary graph file");
+	    }
+	    ByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+	    if (header.getInt(0) != MAGIC) {
+		throw new IOException(file + " is not a binary graph file");
+	    }
+	    if (header.getInt(4) != VERSION) {
+		throw new IOException(file + " has unsupported version " + header.getInt(4));
+	    }
+	    int n = header.getInt(8);
+	    int m = header.getInt(12);
+	    int size = header.getInt(16);
+	    long labelBytes = header.getLong(20);
+	    long[] lengths = sectionLengths(n, m, size, labelBytes);
+	    long total = HEADER_SIZE;
+	    for (long length : lengths) total += length;
+	    if (channel.size() < total) {
+		throw new IOException(file + " is truncated");
+	    }
+
+	    ByteBuffer[] mapped = new ByteBuffer[SECTIONS];
+	    long pos = HEADER_SIZE;
+	    for (int i = 0; i < SECTIONS; i++) {
+		mapped[i] = map(channel, FileChannel.MapMode.READ_ONLY, pos, lengths[i]);
+		pos += lengths[i];
+	    }
+	    state = new State(n, m, size, mapped);
+	}
+    }
+
+    private MappedDirectedGraph(int vertexCount, int edgeCount, int tableSize, ByteBuffer[] sections) {
+	state = new State(vertexCount, edgeCount, tableSize, sections);
+    }
+
+    /**
+     * The buffers of an open graph.  Each call reads the state once, so it
+     * works on the buffers throughout or, once the graph is closed, fails
+     * before touching any of them.
+     */
+    private static class State {
+
+	private final int vertexCount;
+	private final int edgeCount;
+	private final int tableSize;
+	private final IntBuffer labelOffsets;
+	private final IntBuffer offsets;
+	private final IntBuffer targets;
+	private final FloatBuffer weights;
+	private final IntBuffer slots;
+	private final ByteBuffer labels;
+	private volatile Vertex[] vertices;
+
+	State(int vertexCount, int edgeCount, int tableSize, ByteBuffer[] sections) {
+	    this.vertexCount = vertexCount;
+	    this.edgeCount = edgeCount;
+	    this.tableSize = tableSize;
+	    labelOffsets = sections[0].asIntBuffer();
+	    offsets = sections[1].asIntBuffer();
+	    targets = sections[2].asIntBuffer();
+	    weights = sections[3].asFloatBuffer();
+	    slots = sections[4].asIntBuffer();
+	    labels = sections[5];
+	}
+    }
+
+    private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long pos, long length) throws IOException {
+	return channel.map(mode, pos, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Byte lengths of labelOffsets, offsets, targets, weights, slots and
+     * labels.
+     */
+    private static long[] sectionLengths(int n, int m, int tableSize, long labelBytes) {
+	return new long[] { 4L*(n+1), 4L*(n+1), 4L*m, 4L*m, 4L*tableSize, labelBytes };
+    }
+
+    /**
+     * A copy of g held in direct buffers outside the heap.  The edges are
+     * streamed straight from g into the buffers, once to count them and
+     * once to place them, so no compact copy of g is made on the heap on
+     * the way; only the labels and a count per vertex are.
+     * @param g
+     * @return
+     * @throws IllegalArgumentException if a section of the graph is over
+     *         2GB, the most one buffer can hold
+     */
+    public static MappedDirectedGraph offHeap(Graph g) {
+	try {
+	    return direct(edges(g));
+	}
+	catch (IOException e) {
+	    throw new UncheckedIOException(e);
+	}
+    }
+
+    /**
+     * A copy of g kept in file, which is written in the binary graph
+     * format and mapped, so the graph can be bigger than the memory given
+     * to the process and is paged in as it is used.
+     * @param g
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static MappedDirectedGraph offHeap(Graph g, String file) throws IOException {
+	write(g, file);
+	return new MappedDirectedGraph(file);
+    }
+
+    /**
+     * Read a graphPos text file into direct buffers outside the heap.  The
+     * file is parsed twice, once to count each vertex's edges and once to
+     * place them, and no edge is ever held on the heap, so the graph can be
+     * far bigger than the heap.  Vertex ids are in order of first
+     * appearance, as GraphFileLoader.loadCompact gives them.
+     * @param textFile
+     * @return the graph, or null if the file is empty or has fewer vertex
+     *         lines than its first line says
+     * @throws IOException
+     * @throws IllegalArgumentException if a section of the graph is over
+     *         2GB, the most one buffer can hold
+     */
+    public static MappedDirectedGraph readText(String textFile) throws IOException {
+	return direct(edges(textFile));
+    }
+
+    /**
+     * Read a graphPos text file into a binary graph file and map it, the
+     * edges going straight from one file to the other as for readText.
+     * @param textFile
+     * @param binaryFile
+     * @return the graph, or null if the text file is empty or has fewer
+     *         vertex lines than its first line says
+     * @throws IOException
+     */
+    public static MappedDirectedGraph readText(String textFile, String binaryFile) throws IOException {
+	return (build(edges(textFile), binaryFile, new ByteBuffer[SECTIONS]) == null ? null : new MappedDirectedGraph(binaryFile));
+    }
+
+    /**
+     * true if file starts with the binary graph file magic number.
+     * @param file
+     * @return
+     */
+    public static boolean isBinaryGraph(String file) {
+	try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+	    ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+	    while (magic.hasRemaining() && channel.read(magic) >= 0);
+	    return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+	}
+	catch (IOException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Write g to file in the binary graph format.  The edges are streamed
+     * from g into a writable mapping of the file as for offHeap.
+     * @param g
+     * @param file
+     * @throws IOException
+     */
+    public static void write(Graph g, String file) throws IOException {
+	build(edges(g), file, new ByteBuffer[SECTIONS]);
+    }
+
+    /**
+     * The edges of a graph by vertex id, with the labels of the ids.  An
+     * EdgeSource can be walked more than once and gives the same edges each
+     * time.
+     */
+    private static abstract class EdgeSource {
+
+	LabelDictionary labels;
+
+	/**
+	 * Hand every edge to sink.
+	 * @return false if the edges could not be read
+	 */
+	abstract boolean edges(GraphFileLoader.EdgeSink sink) throws IOException;
+
+	/**
+	 * Number of vertices, once the edges have been walked.
+	 */
+	abstract int vertexCount();
+    }
+
+    /**
+     * The edges of g.  An IndexedGraph keeps its own ids; other graphs
+     * number their vertices in the order getVertices gives them, as a
+     * CompactDirectedGraph copy of them would.
+     */
+    private static EdgeSource edges(final Graph g) {
+	if (g instanceof IndexedGraph) {
+	    final IndexedGraph ig = (IndexedGraph)g;
+	    EdgeSource source = new EdgeSource() {
+		    boolean edges(GraphFileLoader.EdgeSink sink) {
+			for (int v = 0, n = ig.vertexCount(); v < n; v++) {
+			    for (int e = ig.edgeStart(v), end = ig.edgeEnd(v); e < end; e++) {
+				sink.edge(v, ig.target(e), ig.weight(e));
+			    }
+			}
+			return true;
+		    }
+
+		    int vertexCount() {
+			return ig.vertexCount();
+		    }
+		};
+	    source.labels = dictionary(ig);
+	    return source;
+	}
+	final LabelDictionary labels = new LabelDictionary();
+	for (Vertex v : g.getVertices()) {
+	    labels.intern(v.getLabel());
+	}
+	EdgeSource source = new EdgeSource() {
+		boolean edges(GraphFileLoader.EdgeSink sink) {
+		    RowVisitor visitor = new RowVisitor(labels, sink);
+		    for (Vertex v : g.getVertices()) {
+			visitor.source = labels.indexOf(v.getLabel());
+			g.forEachEdge(v, visitor);
+		    }
+		    return true;
+		}
+
+		int vertexCount() {
+		    return labels.size();
+		}
+	    };
+	source.labels = labels;
+	return source;
+    }
+
+    /**
+     * The edges of a graphPos text file, parsed each time they are walked.
+     */
+    private static EdgeSource edges(final String textFile) {
+	final LabelDictionary labels = new LabelDictionary();
+	EdgeSource source = new EdgeSource() {
+		boolean edges(GraphFileLoader.EdgeSink sink) throws IOException {
+		    return GraphFileLoader.scan(textFile, labels, sink);
+		}
+
+		int vertexCount() {
+		    return labels.size();
+		}
+	    };
+	source.labels = labels;
+	return source;
+    }
+
+    /**
+     * Passes the edges of one vertex of a Graph on by id.
+     */
+    private static class RowVisitor implements EdgeVisitor {
+
+	private LabelDictionary labels;
+	private GraphFileLoader.EdgeSink sink;
+	private int source;
+
+	RowVisitor(LabelDictionary labels, GraphFileLoader.EdgeSink sink) {
+	    this.labels = labels;
+	    this.sink = sink;
+	}
+
+	public void visit(Vertex w, float weight) {
+	    sink.edge(source, labels.intern(w.getLabel()), weight);
+	}
+    }
+
+    /**
+     * Counts the edges leaving each vertex.
+     */
+    private static class DegreeCount implements GraphFileLoader.EdgeSink {
+
+	private int[] degrees = new int[16];
+	private long edges;
+
+	public void edge(int v, int w, float weight) {
+	    if (v >= degrees.length) {
+		degrees = Arrays.copyOf(degrees, Math.max(degrees.length*2, v + 1));
+	    }
+	    degrees[v]++;
+	    edges++;
+	}
+    }
+
+    /**
+     * Puts each edge at the next free position of its source's row.
+     */
+    private static class Placement implements GraphFileLoader.EdgeSink {
+
+	private int[] next;
+	private int[] rowEnds;
+	private IntBuffer targets;
+	private FloatBuffer weights;
+	private boolean overflow;
+
+	Placement(int[] next, int[] rowEnds, IntBuffer targets, FloatBuffer weights) {
+	    this.next = next;
+	    this.rowEnds = rowEnds;
+	    this.targets = targets;
+	    this.weights = weights;
+	}
+
+	public void edge(int v, int w, float weight) {
+	    if (v >= next.length || next[v] == rowEnds[v]) {
+		overflow = true;
+		return;
+	    }
+	    int position = next[v]++;
+	    targets.put(position, w);
+	    weights.put(position, weight);
+	}
+    }
+
+    /**
+     * The edges of source in direct buffers.
+     * @return the graph, or null if the edges could not be read
+     */
+    private static MappedDirectedGraph direct(EdgeSource source) throws IOException {
+	ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+	int[] size = build(source, null, sections);
+	return (size == null ? null : new MappedDirectedGraph(size[0], size[1], size[2], sections));
+    }
+
+    /**
+     * Lay the edges of source out in the six sections, in direct buffers if
+     * file is null and otherwise in a writable mapping of file, which is
+     * created or replaced.  The edges are walked once to count each
+     * vertex's edges and once to put them in place, and each row is then
+     * sorted by target in place, parallel edges keeping their order.
+     * @param sections set to the sections
+     * @return the vertex count, edge count and table size, or null if the
+     *         edges could not be read
+     */
+    private static int[] build(EdgeSource source, String file, ByteBuffer[] sections) throws IOException {
+	DegreeCount count = new DegreeCount();
+	if (!source.edges(count)) return null;
+	int n = source.vertexCount();
+	if (count.edges > Integer.MAX_VALUE) {
+	    throw new IOException("Graph has more than " + Integer.MAX_VALUE + " edges");
+	}
+	int m = (int)count.edges;
+	LabelDictionary dict = source.labels;
+	int tableSize = tableSize(n);
+	long labelBytes = dict.offsetOf(n);
+	long[] lengths = sectionLengths(n, m, tableSize, labelBytes);
+
+	int[] size = {n, m, tableSize};
+	if (file == null) {
+	    for (int i = 0; i < SECTIONS; i++) {
+		if (lengths[i] > Integer.MAX_VALUE) {
+		    throw new IllegalArgumentException("Graph too large for an off-heap buffer");
+		}
+		sections[i] = ByteBuffer.allocateDirect((int)lengths[i]).order(ByteOrder.LITTLE_ENDIAN);
+	    }
+	    fill(source, count.degrees, n, m, tableSize, sections);
+	    return size;
+	}
+
+	for (long length : lengths) {
+	    if (length > Integer.MAX_VALUE) {
+		throw new IOException("Graph too large for the binary graph format");
+	    }
+	}
+	try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ, StandardOpenOption.WRITE,
+						    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+	    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	    header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m).putInt(tableSize).putLong(labelBytes);
+	    header.clear();
+	    while (header.hasRemaining()) channel.write(header);
+
+	    long pos = HEADER_SIZE;
+	    for (int i = 0; i < SECTIONS; i++) {
+		sections[i] = map(channel, FileChannel.MapMode.READ_WRITE, pos, lengths[i]);
+		pos += lengths[i];
+	    }
+	    fill(source, count.degrees, n, m, tableSize, sections);
+	    for (ByteBuffer section : sections) {
+		((MappedByteBuffer)section).force();
+	    }
+	}
+	return size;
+    }
+
+    /**
+     * Fill the sections from source, whose vertices have the given numbers
+     * of outgoing edges.
+     */
+    private static void fill(EdgeSource source, int[] degrees, int n, int m, int tableSize, ByteBuffer[] sections)
+	throws IOException {
+	IntBuffer offsets = sections[1].asIntBuffer();
+	IntBuffer targets = sections[2].asIntBuffer();
+	FloatBuffer weights = sections[3].asFloatBuffer();
+	int[] next = new int[n];
+	int[] rowEnds = new int[n];
+	int position = 0;
+	for (int v = 0; v < n; v++) {
+	    offsets.put(v, position);
+	    next[v] = position;
+	    position += (v < degrees.length ? degrees[v] : 0);
+	    rowEnds[v] = position;
+	}
+	offsets.put(n, m);
+
+	Placement placement = new Placement(next, rowEnds, targets, weights);
+	boolean read = source.edges(placement);
+	if (!read || placement.overflow || source.vertexCount() != n || !Arrays.equals(next, rowEnds)) {
+	    throw new IOException("Graph changed while it was being copied");
+	}
+	sortRows(n, offsets, targets, weights);
+
+	LabelDictionary dict = source.labels;
+	IntBuffer labelOffsets = sections[0].asIntBuffer();
+	IntBuffer slots = sections[4].asIntBuffer();
+	for (int i = 0; i <= n; i++) {
+	    labelOffsets.put(i, dict.offsetOf(i));
+	}
+	int mask = tableSize - 1;
+	for (int i = 0; i < n; i++) {
+	    int slot = mix(dict.hashOf(i)) & mask;
+	    while (slots.get(slot) != 0) slot = (slot+1) & mask;
+	    slots.put(slot, i + 1);
+	}
+	ByteBuffer labels = sections[5].duplicate();
+	dict.putBytes(labels, n);
+    }
+
+    /**
+     * Stable sort of each row by target, leaving rows that are already in
+     * order alone.  Only the longest row is copied to the heap at once.
+     */
+    private static void sortRows(int n, IntBuffer offsets, IntBuffer targets, FloatBuffer weights) {
+	long[] keys = new long[16];
+	float[] rowWeights = new float[16];
+	for (int v = 0; v < n; v++) {
+	    int start = offsets.get(v);
+	    int end = offsets.get(v+1);
+	    int e = start + 1;
+	    while (e < end && targets.get(e-1) <= targets.get(e)) e++;
+	    if (e >= end) continue;
+	    int length = end - start;
+	    if (length > keys.length) {
+		keys = new long[length];
+		rowWeights = new float[length];
+	    }
+	    for (int i = 0; i < length; i++) {
+		keys[i] = ((long)targets.get(start+i) << 32) | i;
+		rowWeights[i] = weights.get(start+i);
+	    }
+	    Arrays.sort(keys, 0, length);
+	    for (int i = 0; i < length; i++) {
+		targets.put(start+i, (int)(keys[i] >>> 32));
+		weights.put(start+i, rowWeights[(int)keys[i]]);
+	    }
+	}
+    }
+
+    /**
+     * The labels of ig in a dictionary whose ids are ig's vertex ids; a
+     * compact graph's own dictionary is used as it is.
+     */
+    private static LabelDictionary dictionary(IndexedGraph ig) {
+	if (ig instanceof CompactDirectedGraph) {
+	    return ((CompactDirectedGraph)ig).labels();
+	}
+	int n = ig.vertexCount();
+	LabelDictionary dict = new LabelDictionary(n, n * 8);
+	for (int i = 0; i < n; i++) {
+	    dict.intern(ig.vertexAt(i).getLabel());
+	}
+	return dict;
+    }
+
+    private static int tableSize(int n) {
+	int size = 2;
+	while (size < 2L*n) size *= 2;
+	return size;
+    }
+
+    /**
+     * Close the graph.  Any later call on it, from this thread or one
+     * whose query is under way, throws IllegalStateException.  Nothing is
+     * unmapped or freed here: the buffers' memory is returned only when
+     * the garbage collector finds them unreachable, so a closed graph can
+     * never read freed memory.  Closing twice does nothing.
+     */
+    public void close() {
+	state = null;
+    }
+
+    /**
+     * The graph's buffers.
+     * @throws IllegalStateException if the graph is closed
+     */
+    private State state() {
+	State s = state;
+	if (s == null) {
+	    throw new IllegalStateException("closed");
+	}
+	return s;
+    }
+
+    private static int hash(byte[] bytes, int start, int end) {
+	int hash = 0;
+	for (int i = start; i < end; i++) {
+	    hash = 31*hash + bytes[i];
+	}
+	return hash;
+    }
+
+    private static int mix(int hash) {
+	hash *= 0x9E3779B9;
+	return hash ^ (hash >>> 16);
+    }
+
+    private static String labelAt(State s, int i) {
+	int start = s.labelOffsets.get(i);
+	byte[] bytes = new byte[s.labelOffsets.get(i+1) - start];
+	for (int j = 0; j < bytes.length; j++) {
+	    bytes[j] = s.labels.get(start+j);
+	}
+	return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int lowerBound(State s, int v, int w) {
+	int lo = s.offsets.get(v);
+	int hi = s.offsets.get(v+1);
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (s.targets.get(mid) < w) lo = mid + 1;
+	    else hi = mid;
+	}
+	return lo;
+    }
+
+    public int vertexCount() {
+	return state().vertexCount;
+    }
+
+    public int edgeCount() {
+	return state().edgeCount;
+    }
+
+    public int indexOf(String v) {
+	return indexOf(state(), v);
+    }
+
+    private static int indexOf(State s, String v) {
+	byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+	int mask = s.tableSize - 1;
+	for (int slot = mix(hash(bytes, 0, bytes.length)) & mask;; slot = (slot+1) & mask) {
+	    int id = s.slots.get(slot) - 1;
+	    if (id < 0) return -1;
+	    int start = s.labelOffsets.get(id);
+	    if (s.labelOffsets.get(id+1) - start != bytes.length) continue;
+	    int j = 0;
+	    while (j < bytes.length && s.labels.get(start+j) == bytes[j]) j++;
+	    if (j == bytes.length) return id;
+	}
+    }
+
+    public int indexOf(Vertex v) {
+	return indexOf(v.getLabel());
+    }
+
+    public Vertex vertexAt(int i) {
+	return vertexAt(state(), i);
+    }
+
+    /**
+     * The vertex with id i.  The table of vertex objects is only made when
+     * the first one is asked for, and threads racing to make the same
+     * vertex all get the one that was stored first.
+     */
+    private static Vertex vertexAt(State s, int i) {
+	Vertex[] vs = s.vertices;
+	if (vs == null) {
+	    synchronized (s) {
+		vs = s.vertices;
+		if (vs == null) {
+		    vs = new Vertex[s.vertexCount];
+		    s.vertices = vs;
+		}
+	    }
+	}
+	Vertex v = (Vertex)VERTICES.getAcquire(vs, i);
+	if (v == null) {
+	    Vertex made = new AdjacencyListVertex(labelAt(s, i));
+	    v = (Vertex)VERTICES.compareAndExchangeRelease(vs, i, null, made);
+	    if (v == null) v = made;
+	}
+	return v;
+    }
+
+    public int edgeStart(int v) {
+	return state().offsets.get(v);
+    }
+
+    public int edgeEnd(int v) {
+	return state().offsets.get(v+1);
+    }
+
+    public int target(int e) {
+	return state().targets.get(e);
+    }
+
+    public float weight(int e) {
+	return state().weights.get(e);
+    }
+
+    public void addEdge(String v, String w) {
+	throw new UnsupportedOperationException("MappedDirectedGraph is read-only");
+    }
+
+    public void addEdge(Vertex v, Vertex w) {
+	throw new UnsupportedOperationException("MappedDirectedGraph is read-only");
+    }
+
+    public void addEdge(String v, String w, float weight) {
+	throw new UnsupportedOperationException("MappedDirectedGraph is read-only");
+    }
+
+    public void addEdge(Vertex v, Vertex w, float weight) {
+	throw new UnsupportedOperationException("MappedDirectedGraph is read-only");
+    }
+
+    /**
+     * Neigbours of vertex v.  Convenience method for using a string label.
+     * @param v the vertex to find the neighbours of.
+     * @return
+     */
+    public Iterable<Vertex> adjacentTo(String v) {
+	State s = state();
+	return adjacentTo(s, indexOf(s, v));
+    }
+
+    /**
+     * Neigbours of vertex v.
+     * @param v the vertex to find the neighbours of.
+     * @return
+     */
+    public Iterable<Vertex> adjacentTo(Vertex v) {
+	return adjacentTo(v.getLabel());
+    }
+
+    private static Iterable<Vertex> adjacentTo(State s, int v) {
+	ArrayList<Vertex> adjs = new ArrayList<Vertex>();
+	for (int e = s.offsets.get(v), end = s.offsets.get(v+1); e < end; e++) {
+	    if (e == s.offsets.get(v) || s.targets.get(e) != s.targets.get(e-1)) {
+		adjs.add(vertexAt(s, s.targets.get(e)));
+	    }
+	}
+	return adjs;
+    }
+
+    /**
+     * number of neighbours of vertex v.   Convenience method for using a string label.
+     * @param v
+     * @return
+     */
+    public int degree(String v) {
+	State s = state();
+	int id = indexOf(s, v);
+	int neighbours = 0;
+	for (int e = s.offsets.get(id), end = s.offsets.get(id+1); e < end; e++) {
+	    if (e == s.offsets.get(id) || s.targets.get(e) != s.targets.get(e-1)) neighbours++;
+	}
+	return neighbours;
+    }
+
+    /**
+     * number of neighbours of vertex v.
+     * @param v
+     * @return
+     */
+    public int degree(Vertex v) {
+	return degree(v.getLabel());
+    }
+
+    /**
+     * Get all the vertices associated with the graph.
+     * @return
+     */
+    public Iterable<Vertex> getVertices() {
+	return new AbstractList<Vertex>() {
+	    public Vertex get(int i) {
+		return vertexAt(i);
+	    }
+
+	    public int size() {
+		return vertexCount();
+	    }
+	};
+    }
+
+    /**
+     * is v-w an edge in the graph.   Convenience method for using a string label.
+     * @param v
+     * @param w
+     * @return
+     */
+    public boolean hasEdge(String v, String w) {
+	State s = state();
+	int vi = indexOf(s, v);
+	int wi = indexOf(s, w);
+	int e = lowerBound(s, vi, wi);
+	return e < s.offsets.get(vi+1) && s.targets.get(e) == wi;
+    }
+
+    /**
+     * is v-w an edge in the graph
+     * @param v
+     * @param w
+     * @return
+     */
+    public boolean hasEdge(Vertex v, Vertex w) {
+	return hasEdge(v.getLabel(), w.getLabel());
+    }
+
+    public Iterable<Edge> getEdges(String v, String w) {
+	State s = state();
+	int vi = indexOf(s, v);
+	int wi = indexOf(s, w);
+	ArrayList<Edge> matchingEdges = new ArrayList<Edge>();
+	for (int e = lowerBound(s, vi, wi); e < s.offsets.get(vi+1) && s.targets.get(e) == wi; e++) {
+	    matchingEdges.add(new Edge(Integer.toString(e), s.weights.get(e), vertexAt(s, vi), vertexAt(s, wi)));
+	}
+	return matchingEdges;
+    }
+
+    public Iterable<Edge> getEdges(Vertex v, Vertex w) {
+	return getEdges(v.getLabel(), w.getLabel());
+    }
+
+    /**
+     * Edges leaving v in order of target id.
+     * @param v
+     * @param visitor
+     */
+    public void forEachEdge(Vertex v, EdgeVisitor visitor) {
+	State s = state();
+	int id = indexOf(s, v.getLabel());
+	for (int e = s.offsets.get(id), end = s.offsets.get(id+1); e < end; e++) {
+	    visitor.visit(vertexAt(s, s.targets.get(e)), s.weights.get(e));
+	}
+    }
+
+    /**
+     * is v a vertex in the graph.  Convenience method for using a string label.
+     * @param v
+     * @return
+     */
+    public boolean hasVertex(String v) {
+	return indexOf(v) >= 0;
+    }
+
+    /**
+     * is v a vertex in the graph
+     * @param v
+     * @return
+     */
+    public boolean hasVertex(Vertex vertex) {
+	return indexOf(vertex.getLabel()) >= 0;
+    }
+
+    /**
+     * Gets the vertex in the graph with the label v
+     * @param v
+     * @return
+     */
+    public Vertex getVertex(String v) {
+	int id = indexOf(v);
+	return (id < 0 ? null : vertexAt(id));
+    }
+
+}
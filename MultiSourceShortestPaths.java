@@ -0,0 +1,103 @@
+import java.util.concurrent.*;
+
+/**
+ * Shortest paths from many sources at once, spread over a fork-join pool.
+ * Every worker thread keeps one DijkstraShortestPaths engine, and so one
+ * set of scratch arrays, for the life of this object and reuses it for
+ * each source it is given.  Results are handed to a consumer as they are
+ * finished instead of being collected, so all-pairs runs need memory for
+ * one result per worker rather than for V x V distances.
+ */
+public class MultiSourceShortestPaths {
+
+    /**
+     * Receives the result for each source.  Called from the worker threads,
+     * possibly several at a time, and in no particular source order.  The
+     * result shares the worker's scratch arrays and is only valid until
+     * accept returns.
+     */
+    public interface ResultConsumer {
+
+	void accept(ShortestPathResult result);
+
+    }
+
+    private IndexedGraph g;
+    private ForkJoinPool pool;
+    private ThreadLocal<DijkstraShortestPaths> engines;
+
+    /**
+     * Run on the common fork-join pool.
+     * @param g
+     */
+    public MultiSourceShortestPaths(IndexedGraph g) {
+	this(g, ForkJoinPool.commonPool());
+    }
+
+    public MultiSourceShortestPaths(final IndexedGraph g, ForkJoinPool pool) {
+	this.g = g;
+	this.pool = pool;
+	engines = new ThreadLocal<DijkstraShortestPaths>() {
+	    protected DijkstraShortestPaths initialValue() {
+		return new DijkstraShortestPaths(g);
+	    }
+	};
+    }
+
+    /**
+     * Shortest paths from every vertex.
+     * @param consumer
+     */
+    public void runAll(ResultConsumer consumer) {
+	int[] sources = new int[g.vertexCount()];
+	for (int v = 0; v < sources.length; v++) {
+	    sources[v] = v;
+	}
+	run(sources, consumer);
+    }
+
+    /**
+     * Shortest paths from each of the given vertex ids.  Returns once every
+     * result has been consumed; an exception thrown by the consumer is
+     * rethrown here.
+     * @param sources
+     * @param consumer
+     */
+    public void run(int[] sources, ResultConsumer consumer) {
+	pool.invoke(new Sources(sources, 0, sources.length, consumer));
+    }
+
+    /**
+     * Halves the range of sources until one source is left, so idle workers
+     * can steal half of a busy worker's remaining sources.
+     */
+    private class Sources extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	private int[] sources;
+	private int from;
+	private int to;
+	private ResultConsumer consumer;
+
+	Sources(int[] sources, int from, int to, ResultConsumer consumer) {
+	    this.sources = sources;
+	    this.from = from;
+	    this.to = to;
+	    this.consumer = consumer;
+	}
+
+	protected void compute() {
+	    if (to - from > 1) {
+		int mid = (from + to) >>> 1;
+		invokeAll(new Sources(sources, from, mid, consumer),
+			  new Sources(sources, mid, to, consumer));
+		return;
+	    }
+	    if (to > from) {
+		consumer.accept(engines.get().runInContext(sources[from]));
+	    }
+	}
+    }
+
+}
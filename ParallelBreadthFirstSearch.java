@@ -0,0 +1,271 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Level synchronous breadth first search that switches direction (Beamer,
+ * Asanovic and Patterson).  The frontier and the next level are bitsets.
+ * While the frontier is small each of its vertices claims its unvisited
+ * neighbours (top-down); once the frontier's edges outnumber those of the
+ * unvisited vertices by enough, each unvisited vertex instead looks along
+ * its incoming edges for a parent in the frontier and stops at the first
+ * one (bottom-up), which skips most of the edges of the big middle levels.
+ * Both steps split the vertices over a fork-join pool, top-down by claiming
+ * visited bits with compare-and-set and bottom-up by giving each worker
+ * its own words of the bitsets; top-down levels with few edges to follow
+ * are run on the calling thread.
+ *
+ * The results are returned as a BreadthFirstSearch.  Distances are the
+ * same as a sequential search; the traversal list holds each level in id
+ * order, and which parent a vertex gets when it has several in the level
+ * above can differ from the sequential search.  An instance only reads the
+ * graph and may run several searches at once.
+ */
+public class ParallelBreadthFirstSearch {
+
+    private static final int ALPHA = 14;
+    private static final int BETA = 24;
+    private static final int LEAF_WORDS = 64;
+    private static final int SEQUENTIAL_EDGES = 1 << 14;
+
+    private IndexedGraph g;
+    private volatile IndexedGraph reverse;
+    private ForkJoinPool pool;
+
+    /**
+     * Search g on the common fork-join pool.
+     * @param g
+     */
+    public ParallelBreadthFirstSearch(IndexedGraph g) {
+	this(g, null, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param g
+     * @param reverse g with its edges reversed, or null to build it the
+     *        first time a search goes bottom-up
+     * @param pool
+     */
+    public ParallelBreadthFirstSearch(IndexedGraph g, IndexedGraph reverse, ForkJoinPool pool) {
+	this.g = g;
+	this.reverse = reverse;
+	this.pool = pool;
+    }
+
+    public BreadthFirstSearch search(Vertex source) {
+	return search(g.indexOf(source));
+    }
+
+    /**
+     * Breadth first search from the vertex with id source.
+     * @param source
+     * @return
+     */
+    public BreadthFirstSearch search(int source) {
+	GraphMetrics.Query metrics = GraphMetrics.PARALLEL_BFS.start();
+	int n = g.vertexCount();
+	int words = (n + 63) >>> 6;
+	int[] prev = new int[n];
+	int[] dist = new int[n];
+	Arrays.fill(prev, -1);
+	Arrays.fill(dist, -1);
+	int[] order = new int[n];
+	int visitedCount = 0;
+	AtomicLongArray visited = new AtomicLongArray(words);
+	AtomicLongArray frontier = new AtomicLongArray(words);
+	AtomicLongArray next = new AtomicLongArray(words);
+
+	visited.set(source >>> 6, 1L << source);
+	frontier.set(source >>> 6, 1L << source);
+	dist[source] = 0;
+	order[visitedCount++] = source;
+	long frontierEdges = g.edgeEnd(source) - g.edgeStart(source);
+	long unvisitedEdges = g.edgeCount() - frontierEdges;
+	int frontierSize = 1;
+	long edgesScanned = 0;
+	boolean bottomUp = false;
+
+	for (int level = 0; frontierSize > 0; level++) {
+	    if (!bottomUp && frontierEdges > unvisitedEdges / ALPHA) {
+		bottomUp = true;
+		reverse();
+	    }
+	    else if (bottomUp && frontierSize < n / BETA) {
+		bottomUp = false;
+	    }
+
+	    Step step;
+	    if (!bottomUp && frontierEdges < SEQUENTIAL_EDGES) {
+		step = new Step(bottomUp, level, frontier, next, visited, prev, dist, 0, words, words);
+		step.compute();
+	    }
+	    else {
+		step = new Step(bottomUp, level, frontier, next, visited, prev, dist, 0, words, LEAF_WORDS);
+		pool.invoke(step);
+	    }
+	    edgesScanned += step.scanned;
+
+	    frontierSize = 0;
+	    frontierEdges = 0;
+	    for (int i = 0; i < words; i++) {
+		long word = next.get(i);
+		if (word == 0) continue;
+		if (bottomUp) {
+		    visited.set(i, visited.get(i) | word);
+		}
+		for (; word != 0; word &= word - 1) {
+		    int v = (i << 6) + Long.numberOfTrailingZeros(word);
+		    order[visitedCount++] = v;
+		    frontierSize++;
+		    frontierEdges += g.edgeEnd(v) - g.edgeStart(v);
+		}
+	    }
+	    unvisitedEdges -= frontierEdges;
+	    AtomicLongArray done = frontier;
+	    frontier = next;
+	    next = done;
+	    for (int i = 0; i < words; i++) {
+		next.set(i, 0L);
+	    }
+	}
+	if (metrics != null) {
+	    metrics.stop(visitedCount, edgesScanned, visitedCount - 1);
+	}
+	return new BreadthFirstSearch(g, prev, dist, Arrays.copyOf(order, visitedCount));
+    }
+
+    /**
+     * g reversed, built by the first search that needs it.  Searches
+     * running at once share the one copy.
+     */
+    private IndexedGraph reverse() {
+	IndexedGraph r = reverse;
+	if (r == null) {
+	    synchronized (this) {
+		r = reverse;
+		if (r == null) {
+		    r = CompactDirectedGraph.transpose(g);
+		    reverse = r;
+		}
+	    }
+	}
+	return r;
+    }
+
+    /**
+     * Expands one level for a range of bitset words, halving the range
+     * until it is at most leafWords long, and counts the edges it looks at.
+     */
+    private class Step extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	private boolean bottomUp;
+	private int level;
+	private AtomicLongArray frontier;
+	private AtomicLongArray next;
+	private AtomicLongArray visited;
+	private int[] prev;
+	private int[] dist;
+	private int from;
+	private int to;
+	private int leafWords;
+	private long scanned;
+
+	Step(boolean bottomUp, int level, AtomicLongArray frontier, AtomicLongArray next,
+	     AtomicLongArray visited, int[] prev, int[] dist, int from, int to, int leafWords) {
+	    this.bottomUp = bottomUp;
+	    this.level = level;
+	    this.frontier = frontier;
+	    this.next = next;
+	    this.visited = visited;
+	    this.prev = prev;
+	    this.dist = dist;
+	    this.from = from;
+	    this.to = to;
+	    this.leafWords = leafWords;
+	}
+
+	protected void compute() {
+	    if (to - from > leafWords) {
+		int mid = (from + to) >>> 1;
+		Step left = new Step(bottomUp, level, frontier, next, visited, prev, dist, from, mid, leafWords);
+		Step right = new Step(bottomUp, level, frontier, next, visited, prev, dist, mid, to, leafWords);
+		invokeAll(left, right);
+		scanned = left.scanned + right.scanned;
+		return;
+	    }
+	    if (bottomUp) {
+		bottomUp();
+	    }
+	    else {
+		topDown();
+	    }
+	}
+
+	/**
+	 * Each frontier vertex in the range claims its unvisited neighbours,
+	 * which may be anywhere in the bitsets.
+	 */
+	private void topDown() {
+	    for (int i = from; i < to; i++) {
+		for (long word = frontier.get(i); word != 0; word &= word - 1) {
+		    int v = (i << 6) + Long.numberOfTrailingZeros(word);
+		    scanned += g.edgeEnd(v) - g.edgeStart(v);
+		    for (int e = g.edgeStart(v), end = g.edgeEnd(v); e < end; e++) {
+			int w = g.target(e);
+			if (set(visited, w)) {
+			    set(next, w);
+			    dist[w] = level + 1;
+			    prev[w] = v;
+			}
+		    }
+		}
+	    }
+	}
+
+	/**
+	 * Each unvisited vertex in the range looks for a parent in the
+	 * frontier.  Only this task writes these words of next, and visited is
+	 * brought up to date after the level.
+	 */
+	private void bottomUp() {
+	    int n = g.vertexCount();
+	    IndexedGraph reverse = reverse();
+	    for (int i = from; i < to; i++) {
+		long unvisited = ~visited.get(i);
+		long found = 0;
+		for (; unvisited != 0; unvisited &= unvisited - 1) {
+		    int v = (i << 6) + Long.numberOfTrailingZeros(unvisited);
+		    if (v >= n) break;
+		    for (int e = reverse.edgeStart(v), end = reverse.edgeEnd(v); e < end; e++) {
+			int u = reverse.target(e);
+			scanned++;
+			if ((frontier.get(u >>> 6) & (1L << u)) != 0) {
+			    found |= 1L << v;
+			    dist[v] = level + 1;
+			    prev[v] = u;
+			    break;
+			}
+		    }
+		}
+		next.set(i, found);
+	    }
+	}
+    }
+
+    /**
+     * Set bit v of bits.
+     * @return true if it was not already set
+     */
+    private static boolean set(AtomicLongArray bits, int v) {
+	int i = v >>> 6;
+	long bit = 1L << v;
+	while (true) {
+	    long word = bits.get(i);
+	    if ((word & bit) != 0) return false;
+	    if (bits.compareAndSet(i, word, word | bit)) return true;
+	}
+    }
+
+}
@@ -0,0 +1,210 @@
+/**
+ * Shortest path queries between one source and one target.  The
+ * unidirectional search is Dijkstra's algorithm stopped as soon as the
+ * target is settled.  The bidirectional search runs Dijkstra forward from
+ * the source and backward from the target over the reversed graph, always
+ * advancing the side with the smaller frontier distance, and stops once
+ * the two frontiers together cannot beat the best meeting point found.
+ *
+ * Distances are only valid for vertices marked visited in the query
+ * context, so a query costs time for the part of the graph it reaches,
+ * not for the whole graph.  An instance reuses its contexts between
+ * queries and must not be shared between threads.
+ */
+public class PointToPointShortestPath {
+
+    private IndexedGraph g;
+    private IndexedGraph reverse;
+    private QueryContext forward;
+    private QueryContext backward;
+
+    public PointToPointShortestPath(IndexedGraph g) {
+	this(g, null);
+    }
+
+    /**
+     * @param g
+     * @param reverse g with its edges reversed, or null to build it the
+     *        first time a bidirectional query is made
+     */
+    public PointToPointShortestPath(IndexedGraph g, IndexedGraph reverse) {
+	this.g = g;
+	this.reverse = reverse;
+	forward = new QueryContext(g);
+    }
+
+    public ShortestPath shortestPath(Vertex source, Vertex target) {
+	return shortestPath(g.indexOf(source), g.indexOf(target));
+    }
+
+    public ShortestPath bidirectional(Vertex source, Vertex target) {
+	return bidirectional(g.indexOf(source), g.indexOf(target));
+    }
+
+    /**
+     * Dijkstra from source, stopping when target is settled.
+     * @param source
+     * @param target
+     * @return
+     */
+    public ShortestPath shortestPath(int source, int target) {
+	float[] distance = forward.distances();
+	int[] predecessor = forward.predecessors();
+	IndexedPriorityQ q = forward.heap();
+	GraphMetrics.Query metrics = GraphMetrics.POINT_TO_POINT.start(q);
+	forward.reset();
+	reach(forward, source, 0.0f, -1);
+
+	int settled = 0;
+	long scanned = 0;
+	long relaxations = 0;
+	ShortestPath path = null;
+	while (!q.isEmpty()) {
+	    int v = q.poll();
+	    settled++;
+	    if (v == target) {
+		path = new ShortestPath(g, pathFrom(predecessor, target, null, -1), distance[target], settled);
+		break;
+	    }
+	    scanned += g.edgeEnd(v) - g.edgeStart(v);
+	    relaxations += relax(g, forward, v);
+	}
+	if (path == null) {
+	    path = new ShortestPath(g, new int[0], Float.POSITIVE_INFINITY, settled);
+	}
+	if (metrics != null) {
+	    metrics.stop(settled, scanned, relaxations);
+	}
+	return path;
+    }
+
+    /**
+     * Bidirectional Dijkstra between source and target.
+     * @param source
+     * @param target
+     * @return
+     */
+    public ShortestPath bidirectional(int source, int target) {
+	if (reverse == null) {
+	    reverse = CompactDirectedGraph.transpose(g);
+	}
+	if (backward == null) {
+	    backward = new QueryContext(reverse);
+	}
+	float[] forwardDistance = forward.distances();
+	float[] backwardDistance = backward.distances();
+	IndexedPriorityQ forwardQ = forward.heap();
+	IndexedPriorityQ backwardQ = backward.heap();
+	GraphMetrics.Query metrics = GraphMetrics.BIDIRECTIONAL.start(forwardQ, backwardQ);
+	forward.reset();
+	backward.reset();
+	reach(forward, source, 0.0f, -1);
+	reach(backward, target, 0.0f, -1);
+
+	float best = (source == target ? 0.0f : Float.POSITIVE_INFINITY);
+	int meeting = (source == target ? source : -1);
+	int settled = 0;
+	long scanned = 0;
+	long relaxations = 0;
+	while (!forwardQ.isEmpty() && !backwardQ.isEmpty()
+	       && forwardQ.peekPriority() + backwardQ.peekPriority() < best) {
+	    boolean forwards = forwardQ.peekPriority() <= backwardQ.peekPriority();
+	    QueryContext side = (forwards ? forward : backward);
+	    QueryContext other = (forwards ? backward : forward);
+	    IndexedGraph sideGraph = (forwards ? g : reverse);
+	    float[] sideDistance = side.distances();
+	    float[] otherDistance = other.distances();
+
+	    int v = side.heap().poll();
+	    int start = sideGraph.edgeStart(v), end = sideGraph.edgeEnd(v);
+	    settled++;
+	    scanned += end - start;
+	    for (int e = start; e < end; e++) {
+		int w = sideGraph.target(e);
+		float dw = sideDistance[v] + sideGraph.weight(e);
+		if (side.visit(w)) {
+		    reach(side, w, dw, v);
+		}
+		else if (side.heap().contains(w) && dw < sideDistance[w]) {
+		    sideDistance[w] = dw;
+		    side.predecessors()[w] = v;
+		    side.heap().decreaseKey(w, dw);
+		}
+		else {
+		    continue;
+		}
+		relaxations++;
+		if (other.isVisited(w) && dw + otherDistance[w] < best) {
+		    best = dw + otherDistance[w];
+		    meeting = w;
+		}
+	    }
+	}
+	if (metrics != null) {
+	    metrics.stop(settled, scanned, relaxations);
+	}
+	if (meeting < 0) {
+	    return new ShortestPath(g, new int[0], Float.POSITIVE_INFINITY, settled);
+	}
+	return new ShortestPath(g, pathFrom(forward.predecessors(), meeting, backward.predecessors(), meeting),
+				best, settled);
+    }
+
+    /**
+     * Record a first reach of v at distance d from predecessor p.
+     */
+    private static void reach(QueryContext context, int v, float d, int p) {
+	context.visit(v);
+	context.distances()[v] = d;
+	context.predecessors()[v] = p;
+	context.heap().offer(v, d);
+    }
+
+    /**
+     * Relax the edges out of v.
+     * @return the number of edges that improved a distance
+     */
+    private static int relax(IndexedGraph g, QueryContext context, int v) {
+	float[] distance = context.distances();
+	IndexedPriorityQ q = context.heap();
+	int relaxations = 0;
+	for (int e = g.edgeStart(v), end = g.edgeEnd(v); e < end; e++) {
+	    int w = g.target(e);
+	    float dw = distance[v] + g.weight(e);
+	    if (context.visit(w)) {
+		reach(context, w, dw, v);
+		relaxations++;
+	    }
+	    else if (q.contains(w) && dw < distance[w]) {
+		distance[w] = dw;
+		context.predecessors()[w] = v;
+		q.decreaseKey(w, dw);
+		relaxations++;
+	    }
+	}
+	return relaxations;
+    }
+
+    /**
+     * The path from the source to meeting by following forward
+     * predecessors back, then on from meeting to the target by following
+     * backward predecessors if there are any.
+     */
+    private static int[] pathFrom(int[] forwardPredecessor, int meeting, int[] backwardPredecessor, int from) {
+	int length = 0;
+	for (int v = meeting; v >= 0; v = forwardPredecessor[v]) length++;
+	int tail = 0;
+	if (backwardPredecessor != null) {
+	    for (int v = backwardPredecessor[from]; v >= 0; v = backwardPredecessor[v]) tail++;
+	}
+	int[] path = new int[length + tail];
+	int i = length;
+	for (int v = meeting; v >= 0; v = forwardPredecessor[v]) path[--i] = v;
+	i = length;
+	if (backwardPredecessor != null) {
+	    for (int v = backwardPredecessor[from]; v >= 0; v = backwardPredecessor[v]) path[i++] = v;
+	}
+	return path;
+    }
+
+}
@@ -0,0 +1,91 @@
+import java.util.*;
+
+/**
+ * Scratch space for running queries on an IndexedGraph: a visited bitset,
+ * a vertex queue, distance and predecessor arrays and a priority queue.
+ * Searches keep all their state here instead of in the shared Vertex
+ * objects, so the graph is only ever read and any number of searches can
+ * run on it at once as long as each thread uses its own context.  A
+ * context is reused from one query to the next to avoid reallocating its
+ * arrays; it must not be shared between threads.
+ */
+public class QueryContext {
+
+    private IndexedGraph g;
+    private long[] visited;
+    private int[] queue;
+    private float[] distance;
+    private int[] predecessor;
+    private IndexedPriorityQ heap;
+
+    public QueryContext(IndexedGraph g) {
+	this.g = g;
+	visited = new long[(g.vertexCount() + 63) >>> 6];
+    }
+
+    public IndexedGraph getGraph() {
+	return g;
+    }
+
+    /**
+     * Forget the vertices visited and queued by the previous query.
+     */
+    public void reset() {
+	Arrays.fill(visited, 0L);
+	if (heap != null) heap.clear();
+    }
+
+    /**
+     * Mark vertex id v visited.
+     * @param v
+     * @return true if v had not been visited since the last reset
+     */
+    public boolean visit(int v) {
+	long bit = 1L << v;
+	long word = visited[v >>> 6];
+	if ((word & bit) != 0) return false;
+	visited[v >>> 6] = word | bit;
+	return true;
+    }
+
+    public boolean isVisited(int v) {
+	return (visited[v >>> 6] & (1L << v)) != 0;
+    }
+
+    /**
+     * A vertexCount() long int array for use as a FIFO queue or stack.
+     * @return
+     */
+    public int[] queue() {
+	if (queue == null) queue = new int[g.vertexCount()];
+	return queue;
+    }
+
+    /**
+     * A vertexCount() long distance array.  Not cleared by reset.
+     * @return
+     */
+    public float[] distances() {
+	if (distance == null) distance = new float[g.vertexCount()];
+	return distance;
+    }
+
+    /**
+     * A vertexCount() long predecessor array.  Not cleared by reset.
+     * @return
+     */
+    public int[] predecessors() {
+	if (predecessor == null) predecessor = new int[g.vertexCount()];
+	return predecessor;
+    }
+
+    /**
+     * A priority queue able to hold every vertex id.  Emptied by reset.
+     * @return
+     */
+    public IndexedPriorityQ heap() {
+	if (heap == null) heap = new IndexedPriorityQ(g.vertexCount());
+	return heap;
+    }
+
+}
@@ -0,0 +1,70 @@
+import java.util.*;
+
+/**
+ * A single shortest path between two vertices of an IndexedGraph, as
+ * found by a point-to-point query.
+ */
+public class ShortestPath {
+
+    private IndexedGraph g;
+    private int[] path;
+    private float distance;
+    private int settled;
+
+    /**
+     * @param g
+     * @param path the vertex ids on the path from source to target, or an
+     *        empty array if there is no path
+     * @param distance the length of the path
+     * @param settled the number of vertices the search settled
+     */
+    public ShortestPath(IndexedGraph g, int[] path, float distance, int settled) {
+	this.g = g;
+	this.path = path;
+	this.distance = distance;
+	this.settled = settled;
+    }
+
+    public boolean exists() {
+	return path.length > 0;
+    }
+
+    /**
+     * Length of the path.
+     * @return the distance, or Float.POSITIVE_INFINITY if there is no path
+     */
+    public float getDistance() {
+	return distance;
+    }
+
+    public int[] vertexIds() {
+	return path;
+    }
+
+    public List<Vertex> getVertices() {
+	ArrayList<Vertex> vertices = new ArrayList<Vertex>(path.length);
+	for (int id : path) {
+	    vertices.add(g.vertexAt(id));
+	}
+	return vertices;
+    }
+
+    /**
+     * Number of vertices the search settled before it found the path, a
+     * measure of how much of the graph the query touched.
+     * @return
+     */
+    public int getSettledCount() {
+	return settled;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder result = new StringBuilder();
+	for (int id : path) {
+	    result.append(' ').append(g.vertexAt(id));
+	}
+	return result.append(": cost = ").append(distance).toString();
+    }
+
+}
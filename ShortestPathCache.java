@@ -0,0 +1,196 @@
+import java.util.*;
+
+/**
+ * Caches single-source shortest path results so that repeated queries from
+ * the same source are answered without searching the graph again.  Each
+ * result is kept as its distance and predecessor arrays, 8 bytes per
+ * vertex, and the least recently used results are evicted once their
+ * total size passes the configured limit.
+ *
+ * When the cached graph is an AdjacencyListDirectedGraph every lookup
+ * checks its modification count, and for a ConcurrentDirectedGraph the
+ * version of its current snapshot; if edges have been added since the
+ * results were computed they are all dropped and the graph is indexed
+ * again.  Other graphs are treated as read-only and are indexed once.
+ *
+ * Lookups are synchronized, so a cache may be shared between threads, but
+ * a miss holds the lock while the search runs.
+ */
+public class ShortestPathCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private Graph g;
+    private long maxBytes;
+    private long bytes;
+    private long version;
+    private IndexedGraph indexed;
+    private DijkstraShortestPaths engine;
+    private LinkedHashMap<Integer, ShortestPathResult> results;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public ShortestPathCache(Graph g) {
+	this(g, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param g
+     * @param maxBytes the most memory the cached results may take; at least
+     *        one result is always kept
+     */
+    public ShortestPathCache(Graph g, long maxBytes) {
+	this.g = g;
+	this.maxBytes = maxBytes;
+	results = new LinkedHashMap<Integer, ShortestPathResult>(16, 0.75f, true);
+	index();
+    }
+
+    /**
+     * Shortest paths from source, from the cache if possible.
+     * @param source
+     * @return the result, or null if source is not in the graph
+     */
+    public synchronized ShortestPathResult shortestPaths(String source) {
+	if (version != modificationCount()) {
+	    invalidate();
+	}
+	int s = indexed.indexOf(source);
+	if (s < 0) return null;
+	ShortestPathResult result = results.get(s);
+	if (result != null) {
+	    hits++;
+	    return result;
+	}
+	misses++;
+	result = engine.run(s);
+	results.put(s, result);
+	bytes += entrySize();
+	Iterator<ShortestPathResult> i = results.values().iterator();
+	while (bytes > maxBytes && results.size() > 1) {
+	    i.next();
+	    i.remove();
+	    bytes -= entrySize();
+	    evictions++;
+	}
+	return result;
+    }
+
+    public ShortestPathResult shortestPaths(Vertex source) {
+	return shortestPaths(source.getLabel());
+    }
+
+    /**
+     * The shortest path from source to target, read from the cached result
+     * for source.
+     * @param source
+     * @param target
+     * @return the path, or null if either vertex is not in the graph
+     */
+    public ShortestPath shortestPath(String source, String target) {
+	ShortestPathResult result = shortestPaths(source);
+	if (result == null) return null;
+	int t = result.getGraph().indexOf(target);
+	if (t < 0) return null;
+	return new ShortestPath(result.getGraph(), (result.hasPathTo(t) ? result.pathTo(t) : new int[0]),
+				result.distanceTo(t), 0);
+    }
+
+    /**
+     * Drop every cached result.
+     */
+    public synchronized void clear() {
+	results.clear();
+	bytes = 0;
+    }
+
+    public synchronized long getHitCount() {
+	return hits;
+    }
+
+    public synchronized long getMissCount() {
+	return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+	return evictions;
+    }
+
+    /**
+     * Number of times the results were dropped because the graph changed.
+     * @return
+     */
+    public synchronized long getInvalidationCount() {
+	return invalidations;
+    }
+
+    public synchronized int size() {
+	return results.size();
+    }
+
+    /**
+     * Memory taken by the cached results.
+     * @return
+     */
+    public synchronized long sizeInBytes() {
+	return bytes;
+    }
+
+    /**
+     * Fraction of lookups answered from the cache.
+     * @return
+     */
+    public synchronized double hitRate() {
+	return (hits + misses == 0 ? 0.0 : (double)hits / (hits + misses));
+    }
+
+    @Override
+    public synchronized String toString() {
+	return "hits " + hits + ", misses " + misses + ", evictions " + evictions
+	    + ", invalidations " + invalidations + ", " + results.size() + " results in " + bytes + " bytes";
+    }
+
+    private void invalidate() {
+	if (!results.isEmpty()) {
+	    invalidations++;
+	}
+	clear();
+	index();
+    }
+
+    private void index() {
+	if (g instanceof ConcurrentDirectedGraph) {
+	    ConcurrentDirectedGraph.Snapshot snapshot = ((ConcurrentDirectedGraph)g).snapshot();
+	    version = snapshot.version();
+	    indexed = snapshot.toCompact();
+	}
+	else {
+	    version = modificationCount();
+	    indexed = (g instanceof AdjacencyListDirectedGraph ? ((AdjacencyListDirectedGraph)g).freeze()
+		       : CompactDirectedGraph.indexed(g));
+	}
+	engine = new DijkstraShortestPaths(indexed);
+    }
+
+    /**
+     * The version of g the cached results must match: its modification
+     * count or snapshot version, or 0 for a graph that does not change.
+     */
+    private long modificationCount() {
+	if (g instanceof AdjacencyListDirectedGraph) {
+	    return ((AdjacencyListDirectedGraph)g).getModificationCount();
+	}
+	if (g instanceof ConcurrentDirectedGraph) {
+	    return ((ConcurrentDirectedGraph)g).snapshot().version();
+	}
+	return 0;
+    }
+
+    private long entrySize() {
+	return 8L * indexed.vertexCount() + ENTRY_OVERHEAD;
+    }
+
+}
@@ -0,0 +1,93 @@
+import java.util.*;
+
+/**
+ * Distances and predecessors from one source vertex, as produced by
+ * DijkstraShortestPaths.  Values are held in arrays indexed by the dense
+ * vertex ids of an IndexedGraph.  Vertices that cannot be reached
+ * have an infinite distance and no predecessor.
+ */
+public class ShortestPathResult {
+
+    private IndexedGraph g;
+    private int source;
+    private float[] distance;
+    private int[] predecessor;
+
+    public ShortestPathResult(IndexedGraph g, int source, float[] distance, int[] predecessor) {
+	this.g = g;
+	this.source = source;
+	this.distance = distance;
+	this.predecessor = predecessor;
+    }
+
+    public IndexedGraph getGraph() {
+	return g;
+    }
+
+    public Vertex getSource() {
+	return g.vertexAt(source);
+    }
+
+    public int sourceId() {
+	return source;
+    }
+
+    public boolean hasPathTo(int v) {
+	return distance[v] != Float.POSITIVE_INFINITY;
+    }
+
+    public boolean hasPathTo(Vertex v) {
+	return hasPathTo(g.indexOf(v));
+    }
+
+    /**
+     * Length of the shortest path to vertex id v.
+     * @param v
+     * @return the distance, or Float.POSITIVE_INFINITY if v is unreachable
+     */
+    public float distanceTo(int v) {
+	return distance[v];
+    }
+
+    public float distanceTo(Vertex v) {
+	return distanceTo(g.indexOf(v));
+    }
+
+    /**
+     * Vertex id before v on the shortest path to v.
+     * @param v
+     * @return the id, or -1 for the source and unreachable vertices
+     */
+    public int predecessorOf(int v) {
+	return predecessor[v];
+    }
+
+    public Vertex predecessorOf(Vertex v) {
+	int p = predecessorOf(g.indexOf(v));
+	return (p < 0 ? null : g.vertexAt(p));
+    }
+
+    /**
+     * Vertex ids on the shortest path to v, starting at the source.
+     * @param v
+     * @return the path, or an empty array if v is unreachable
+     */
+    public int[] pathTo(int v) {
+	if (!hasPathTo(v)) return new int[0];
+	int length = 0;
+	for (int w = v; w >= 0; w = predecessor[w]) length++;
+	int[] path = new int[length];
+	for (int w = v; w >= 0; w = predecessor[w]) path[--length] = w;
+	return path;
+    }
+
+    public List<Vertex> pathTo(Vertex v) {
+	int[] ids = pathTo(g.indexOf(v));
+	List<Vertex> path = new ArrayList<Vertex>(ids.length);
+	for (int id : ids) {
+	    path.add(g.vertexAt(id));
+	}
+	return path;
+    }
+
+}
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes shortest paths in the form GraphTester prints them,
+ * "Shortest path to w: s ... w: cost = d" a line at a time, straight from a
+ * ShortestPathResult's predecessor array into a byte buffer, so each line
+ * costs time in proportion to its length rather than to its square.  The
+ * path last written is kept as a stack of vertex ids with the encoded text
+ * of each of its prefixes, and since paths in a shortest path tree share
+ * their beginnings the next path only walks predecessors back to the
+ * first vertex it has in common with the stack and only encodes the part
+ * after it.
+ *
+ * Labels are written as UTF-8.  Nothing reaches the stream until the
+ * buffer fills or flush is called.
+ */
+public class ShortestPathWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] PREFIX = "Shortest path to ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COST = ": cost = ".getBytes(StandardCharsets.US_ASCII);
+
+    private OutputStream out;
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private int count;
+
+    private ShortestPathResult result;
+    private LabelDictionary labels;
+    private int[] stack = new int[16];
+    private int[] depth;
+    private int top;
+    private byte[] text = new byte[256];
+    private int[] ends = new int[16];
+    private int[] suffix = new int[16];
+
+    public ShortestPathWriter(OutputStream out) {
+	this.out = out;
+    }
+
+    /**
+     * Write the shortest path to every vertex of the result's graph, in id
+     * order.
+     * @param result
+     * @throws IOException
+     */
+    public void writeAll(ShortestPathResult result) throws IOException {
+	for (int v = 0; v < result.getGraph().vertexCount(); v++) {
+	    write(result, v);
+	}
+    }
+
+    /**
+     * Write the shortest path to each of vertices, in their order.
+     * @param result
+     * @param vertices vertices of the result's graph
+     * @throws IOException
+     */
+    public void write(ShortestPathResult result, Iterable<Vertex> vertices) throws IOException {
+	IndexedGraph g = result.getGraph();
+	for (Vertex v : vertices) {
+	    write(result, g.indexOf(v));
+	}
+    }
+
+    /**
+     * Write the shortest path to vertex id v.  An unreachable vertex is
+     * written as a path of its own with an infinite cost.  Either way the
+     * path ends with v on top of the stack.
+     * @param result
+     * @param v
+     * @throws IOException
+     */
+    public void write(ShortestPathResult result, int v) throws IOException {
+	if (result != this.result) {
+	    start(result);
+	}
+	int suffixLength = 0;
+	int u = v;
+	while (u >= 0 && !onStack(u)) {
+	    if (suffixLength == suffix.length) {
+		suffix = Arrays.copyOf(suffix, suffixLength*2);
+	    }
+	    suffix[suffixLength++] = u;
+	    u = result.predecessorOf(u);
+	}
+	top = (u < 0 ? -1 : depth[u]);
+	while (suffixLength > 0) {
+	    push(suffix[--suffixLength]);
+	}
+
+	int labelStart = (top == 0 ? 0 : ends[top-1]) + 1;
+	put(PREFIX, 0, PREFIX.length);
+	put(text, labelStart, ends[top] - labelStart);
+	put((byte)':');
+	put(text, 0, ends[top]);
+	put(COST, 0, COST.length);
+	String cost = Float.toString(result.distanceTo(v));
+	for (int i = 0; i < cost.length(); i++) {
+	    put((byte)cost.charAt(i));
+	}
+	put((byte)'\n');
+    }
+
+    /**
+     * Write out everything buffered and flush the stream.
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+	out.write(buf, 0, count);
+	count = 0;
+	out.flush();
+    }
+
+    private void start(ShortestPathResult result) {
+	this.result = result;
+	IndexedGraph g = result.getGraph();
+	labels = (g instanceof CompactDirectedGraph ? ((CompactDirectedGraph)g).labels() : null);
+	depth = new int[g.vertexCount()];
+	top = -1;
+    }
+
+    /**
+     * true if u is on the stack, at the depth recorded for it.
+     */
+    private boolean onStack(int u) {
+	int d = depth[u];
+	return d <= top && stack[d] == u;
+    }
+
+    /**
+     * Extend the path on the stack by u, whose predecessor is on top.
+     */
+    private void push(int u) {
+	top++;
+	if (top == stack.length) {
+	    stack = Arrays.copyOf(stack, top*2);
+	    ends = Arrays.copyOf(ends, top*2);
+	}
+	stack[top] = u;
+	depth[u] = top;
+	int end = (top == 0 ? 0 : ends[top-1]);
+	byte[] encoded = null;
+	int length;
+	if (labels != null) {
+	    length = labels.offsetOf(u+1) - labels.offsetOf(u);
+	}
+	else {
+	    encoded = result.getGraph().vertexAt(u).getLabel().getBytes(StandardCharsets.UTF_8);
+	    length = encoded.length;
+	}
+	if (end + 1 + length > text.length) {
+	    text = Arrays.copyOf(text, Math.max(text.length*2, end + 1 + length));
+	}
+	text[end] = ' ';
+	if (encoded == null) {
+	    labels.getBytes(u, text, end + 1);
+	}
+	else {
+	    System.arraycopy(encoded, 0, text, end + 1, length);
+	}
+	ends[top] = end + 1 + length;
+    }
+
+    private void put(byte b) throws IOException {
+	if (count == buf.length) {
+	    out.write(buf, 0, count);
+	    count = 0;
+	}
+	buf[count++] = b;
+    }
+
+    private void put(byte[] bytes, int start, int length) throws IOException {
+	while (length > 0) {
+	    if (count == buf.length) {
+		out.write(buf, 0, count);
+		count = 0;
+	    }
+	    int n = Math.min(length, buf.length - count);
+	    System.arraycopy(bytes, start, buf, count, n);
+	    count += n;
+	    start += n;
+	    length -= n;
+	}
+    }
+
+}